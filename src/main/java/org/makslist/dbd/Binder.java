@@ -0,0 +1,84 @@
+package org.makslist.dbd;
+
+import javax.sql.rowset.serial.*;
+import java.math.*;
+import java.sql.*;
+import java.util.*;
+
+import static java.sql.Types.*;
+
+/**
+ * Binds the text form of a column value to a statement parameter.
+ * Resolved once per column type, see {@link TableMeta#binders()}.
+ */
+@FunctionalInterface
+public interface Binder {
+
+    void bind(PreparedStatement stmt, int index, String value, LobStore lobs) throws SQLException;
+
+    static Binder of(int type) {
+        Binder binder = nonNull(type);
+        return (stmt, index, value, lobs) -> {
+            if (value == null)
+                stmt.setNull(index, type);
+            else
+                binder.bind(stmt, index, value, lobs);
+        };
+    }
+
+    static Binder nonNull(int type) {
+        switch (type) {
+            case SMALLINT:
+                return (stmt, index, value, lobs) -> stmt.setShort(index, Short.parseShort(value));
+            case TINYINT:
+            case INTEGER:
+                return (stmt, index, value, lobs) -> stmt.setInt(index, Integer.parseInt(value));
+            case BIGINT:
+                return (stmt, index, value, lobs) -> stmt.setLong(index, Long.parseLong(value));
+            case NUMERIC:
+            case DECIMAL:
+                return (stmt, index, value, lobs) -> stmt.setBigDecimal(index, new BigDecimal(value));
+            case FLOAT:
+                return (stmt, index, value, lobs) -> stmt.setFloat(index, Float.parseFloat(value));
+            case REAL:
+            case DOUBLE:
+                return (stmt, index, value, lobs) -> stmt.setDouble(index, Double.parseDouble(value));
+            case BOOLEAN:
+                return (stmt, index, value, lobs) -> stmt.setBoolean(index, Boolean.parseBoolean(value));
+            case DATE:
+                return (stmt, index, value, lobs) -> stmt.setDate(index, java.sql.Date.valueOf(value));
+            case TIME:
+                return (stmt, index, value, lobs) -> stmt.setTime(index, Time.valueOf(java.time.LocalTime.parse(value)));
+            case TIMESTAMP:
+                return (stmt, index, value, lobs) -> stmt.setTimestamp(index, Timestamp.valueOf(value));
+            case TIME_WITH_TIMEZONE:
+            case TIMESTAMP_WITH_TIMEZONE:
+            case BINARY:
+            case BIT:
+            case NULL:
+            case OTHER:
+            case REF:
+            case ROWID:
+            case SQLXML:
+            case VARBINARY:
+            case NCLOB:
+            case CLOB:
+                return (stmt, index, value, lobs) -> {
+                    if (lobs != null && LobStore.isDigest(value))
+                        stmt.setCharacterStream(index, lobs.reader(value));
+                    else
+                        stmt.setClob(index, new SerialClob(value.toCharArray()));
+                };
+            case BLOB:
+                return (stmt, index, value, lobs) -> {
+                    if (lobs != null && LobStore.isDigest(value))
+                        stmt.setBinaryStream(index, lobs.stream(value));
+                    else
+                        stmt.setBlob(index, new SerialBlob(Base64.getDecoder().decode(value.getBytes())));
+                };
+            default:
+                return (stmt, index, value, lobs) -> stmt.setString(index, value);
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.makslist.dbd;
+
+import java.sql.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Bulk mode of an import. Foreign keys of the table stop being checked and its non-unique secondary
+ * indexes stop being maintained while the rows are loaded; {@link #finish()} rebuilds the indexes and
+ * validates the foreign keys again.
+ * <ul>
+ * <li>Oracle: constraints are disabled, indexes marked unusable and rebuilt in parallel.</li>
+ * <li>H2: referential integrity of the table is switched off and checked when switched on.</li>
+ * <li>MySQL: foreign key checks are switched off for the session and checked by query afterwards.</li>
+ * <li>Otherwise foreign keys stay active.</li>
+ * </ul>
+ * Outside of Oracle the indexes are dropped and created again. Indexes that back a foreign key are kept.
+ * The statements are DDL, which commits implicitly on Oracle, MySQL and H2, so bulk mode is only offered
+ * together with --commit and on a single connection; a failed load is rolled back by {@link #abort()}
+ * before the rebuild.
+ */
+public class BulkLoad {
+
+    static BulkLoad begin(Crud crud, TableMeta table) throws SQLException {
+        BulkLoad bulk = new BulkLoad(crud, table);
+        bulk.begin();
+        return bulk;
+    }
+
+    private final Crud crud;
+    private final TableMeta table;
+    private final List<TableMeta.Index> indexes;
+    private final List<TableMeta.ForeignKey> foreignKeys;
+
+    private final OutPut output = OutPut.getInstance();
+
+    private BulkLoad(Crud crud, TableMeta table) {
+        this.crud = crud;
+        this.table = table;
+        this.foreignKeys = table.foreignKeys != null ? table.foreignKeys : Collections.emptyList();
+        Set<Set<String>> fkColumns = foreignKeys.stream().map(fk -> fk.mappings.stream().map(m -> m.fkColumnName).collect(Collectors.toSet())).collect(Collectors.toSet());
+        this.indexes = table.indexes.stream()
+                .filter(i -> !i.unique)
+                .filter(i -> !fkColumns.contains(new HashSet<>(i.columns)))
+                .collect(Collectors.toList());
+    }
+
+    public List<TableMeta.Index> getIndexes() {
+        return indexes;
+    }
+
+    private void begin() throws SQLException {
+        output.userln("   Bulk mode: " + indexes.size() + " indexes and " + foreignKeys.size() + " foreign keys deferred");
+        if (crud.isOracle()) {
+            for (TableMeta.ForeignKey fk : foreignKeys)
+                crud.execute("alter table " + table.name + " disable constraint " + fk.name);
+            for (TableMeta.Index index : indexes)
+                crud.execute("alter index " + index.name + " unusable");
+            return;
+        }
+
+        if (isH2() && !foreignKeys.isEmpty())
+            crud.execute("alter table " + table.name + " set referential_integrity false");
+        else if (isMySql())
+            crud.execute("set foreign_key_checks = 0");
+        for (TableMeta.Index index : indexes)
+            crud.execute("drop index " + index.name + (isMySql() ? " on " + table.name : ""));
+    }
+
+    /**
+     * Validates the foreign keys and rebuilds the indexes. The foreign keys are checked by query before any DDL,
+     * which would commit the load; rows violating them are rolled back. All steps are attempted; the first
+     * failure is thrown.
+     */
+    public void finish() throws SQLException {
+        List<SQLException> failures = new ArrayList<>();
+        for (TableMeta.ForeignKey fk : foreignKeys)
+            validate(failures, fk);
+        if (!failures.isEmpty())
+            crud.rollback();
+
+        if (crud.isOracle()) {
+            for (TableMeta.Index index : indexes) {
+                attempt(failures, "alter index " + index.name + " rebuild parallel");
+                attempt(failures, "alter index " + index.name + " noparallel");
+            }
+            for (TableMeta.ForeignKey fk : foreignKeys)
+                if (!attempt(failures, "alter table " + table.name + " enable validate constraint " + fk.name)) {
+                    output.error("   Foreign key " + fk.name + " is enforced for new rows only, existing rows violate it");
+                    attempt(failures, "alter table " + table.name + " enable novalidate constraint " + fk.name);
+                }
+        } else {
+            for (TableMeta.Index index : indexes)
+                attempt(failures, index.createSql(table.name));
+            if (isH2() && !foreignKeys.isEmpty())
+                attempt(failures, "alter table " + table.name + " set referential_integrity true check");
+            else if (isMySql())
+                attempt(failures, "set foreign_key_checks = 1");
+        }
+        if (!failures.isEmpty()) {
+            SQLException first = failures.get(0);
+            failures.stream().skip(1).forEach(first::addSuppressed);
+            throw first;
+        }
+    }
+
+    /**
+     * Rolls back the rows loaded so far, then rebuilds the indexes and validates the foreign keys.
+     */
+    public void abort() throws SQLException {
+        crud.rollback();
+        finish();
+    }
+
+    private boolean attempt(List<SQLException> failures, String sql) {
+        try {
+            crud.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            output.error("   " + e.getMessage() + "\n" + sql);
+            failures.add(e);
+            return false;
+        }
+    }
+
+    // Rows of the table without their parent row; MySQL does not check them when foreign key checks are switched on again.
+    private void validate(List<SQLException> failures, TableMeta.ForeignKey fk) {
+        String pkTable = fk.mappings.get(0).pkTableName;
+        String join = fk.mappings.stream().map(m -> "p." + m.pkColumnName + " = c." + m.fkColumnName).collect(Collectors.joining(" and "));
+        String notNull = fk.mappings.stream().map(m -> "c." + m.fkColumnName + " is not null").collect(Collectors.joining(" and "));
+        String sql = "select count(*) from " + table.name + " c where " + notNull + " and not exists (select 1 from " + pkTable + " p where " + join + ")";
+        try {
+            long orphans = crud.count(sql);
+            if (orphans > 0) {
+                output.error("   " + orphans + " rows of " + table.name + " violate foreign key " + fk.name + ", rolling back");
+                failures.add(new SQLException(orphans + " rows of " + table.name + " violate foreign key " + fk.name));
+            }
+        } catch (SQLException e) {
+            failures.add(e);
+        }
+    }
+
+    private boolean isH2() {
+        return "H2".equalsIgnoreCase(crud.productName());
+    }
+
+    private boolean isMySql() {
+        return "MySQL".equalsIgnoreCase(crud.productName());
+    }
+
+}
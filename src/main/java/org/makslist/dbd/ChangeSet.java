@@ -1,6 +1,6 @@
 package org.makslist.dbd;
 
-import javax.sql.rowset.serial.*;
+import java.io.*;
 import java.math.*;
 import java.nio.charset.*;
 import java.sql.*;
@@ -11,6 +11,8 @@ import static java.sql.Types.*;
 
 public class ChangeSet {
 
+    private static final int BATCH_SIZE = 500;
+
     private final Snapshot reference;
     private final Snapshot target;
 
@@ -18,15 +20,23 @@ public class ChangeSet {
     private final List<Snapshot.Key> updateKeys;
     private final List<Snapshot.Key> insertKeys;
 
+    // Columns compared by the delta, null for all; ignored columns are never written by an update.
+    private final boolean[] useColumn;
+
     private final OutPut output = OutPut.getInstance(null);
 
     public ChangeSet(Snapshot reference, Snapshot target, List<Snapshot.Key> insertKeys, List<Snapshot.Key> updateKeys, List<Snapshot.Key> deleteKeys) {
+        this(reference, target, insertKeys, updateKeys, deleteKeys, null);
+    }
+
+    public ChangeSet(Snapshot reference, Snapshot target, List<Snapshot.Key> insertKeys, List<Snapshot.Key> updateKeys, List<Snapshot.Key> deleteKeys, boolean[] useColumn) {
         this.reference = reference;
         this.target = target;
 
         this.insertKeys = insertKeys;
         this.updateKeys = updateKeys;
         this.deleteKeys = deleteKeys;
+        this.useColumn = useColumn;
     }
 
     public Snapshot getReference() {
@@ -61,6 +71,32 @@ public class ChangeSet {
         return deleteKeys.isEmpty() && updateKeys.isEmpty() && insertKeys.isEmpty();
     }
 
+    /**
+     * True if the table has a foreign key to itself, so that its rows can depend on each other.
+     */
+    public boolean isSelfReferencing() {
+        TableMeta table = target.getTable();
+        return table.foreignKeys != null && table.foreignKeys.stream()
+                .flatMap(fk -> fk.mappings.stream())
+                .anyMatch(m -> m.pkTableName.equalsIgnoreCase(table.name));
+    }
+
+    /**
+     * Splits the changes into disjoint parts by the hash of the primary key.
+     */
+    public List<ChangeSet> split(int parts) {
+        List<ChangeSet> split = new ArrayList<>(parts);
+        for (int p = 0; p < parts; p++)
+            split.add(new ChangeSet(reference, target, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), useColumn));
+        for (Snapshot.Key key : insertKeys)
+            split.get(Math.floorMod(key.hashCode(), parts)).insertKeys.add(key);
+        for (Snapshot.Key key : updateKeys)
+            split.get(Math.floorMod(key.hashCode(), parts)).updateKeys.add(key);
+        for (Snapshot.Key key : deleteKeys)
+            split.get(Math.floorMod(key.hashCode(), parts)).deleteKeys.add(key);
+        return split;
+    }
+
     public void displayDiff(boolean detailed) {
         int columnWidth = 12;
         String[] columnNames = getReference().columnNames().toArray(String[]::new);
@@ -95,78 +131,184 @@ public class ChangeSet {
         }
     }
 
-    public void applyInsert(Connection conn, boolean continueOnError) {
+    public int applyInsert(Connection conn, boolean continueOnError) {
+        return applyInsert(conn, continueOnError, null);
+    }
+
+    /**
+     * Executes the inserts and returns the number of statements and batches sent to the database.
+     */
+    public int applyInsert(Connection conn, boolean continueOnError, ImportJournal journal) {
         Snapshot ref = getReference();
-        List<String> columns = ref.columnNames().collect(Collectors.toList());
-        String cols = columns.stream().collect(Collectors.joining(", ", " (", ")"));
+        List<TableMeta.Column> columns = ref.getTable().columns;
+        String cols = columns.stream().map(c -> c.name).collect(Collectors.joining(", ", " (", ")"));
         String values = columns.stream().map(c -> "?").collect(Collectors.joining(", ", " values (", ")"));
         String sql = "insert into " + ref.getTableName() + cols + values;
 
-        for (Snapshot.Record rec : insertRecs()) {
-            try {
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                int i = 1;
-                for (String col : columns)
-                    bindVar(stmt, rec.columnType(col), i++, rec.column(col));
-
-                output.info(stmt.toString());
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                output.error(e.getMessage() + "\n" + sql);
-                if (!continueOnError)
-                    throw new RuntimeException(e);
+        Binder[] binders = ref.getTable().binders();
+        LobStore lobs = ref.getLobStore();
+        int executed = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Snapshot.Key key : journal != null ? journal.ordered(insertKeys) : insertKeys) {
+                Snapshot.Record rec = ref.getRecord(key);
+                try {
+                    for (int i = 0; i < binders.length; i++)
+                        binders[i].bind(stmt, i + 1, rec.column(i), lobs);
+
+                    if (output.isInfo())
+                        output.info(stmt.toString());
+                    executed++;
+                    stmt.executeUpdate();
+                    if (journal != null)
+                        journal.applied(conn, "insert", key, 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (SQLException e) {
+                    output.error(e.getMessage() + "\n" + sql);
+                    if (!continueOnError)
+                        throw new RuntimeException(e);
+                } finally {
+                    if (lobs != null)
+                        lobs.closeStreams();
+                }
             }
+        } catch (SQLException e) {
+            output.error(e.getMessage() + "\n" + sql);
+            if (!continueOnError)
+                throw new RuntimeException(e);
         }
+        return executed;
+    }
+
+    public int applyUpdate(Connection conn, boolean continueOnError) {
+        return applyUpdate(conn, continueOnError, null);
     }
 
-    public void applyUpdate(Connection conn, boolean continueOnError) {
+    /**
+     * Executes the updates and returns the number of statements and batches sent to the database.
+     */
+    public int applyUpdate(Connection conn, boolean continueOnError, ImportJournal journal) {
         Snapshot ref = getReference();
-        String set = ref.nonPkColumns().map(s -> s + " = ?").collect(Collectors.joining(", ", " set ", ""));
-        String where = ref.getTable().getPkColumns().map(c -> c.name + " = ?").collect(Collectors.joining(" and ", " where ", ""));
-        String sql = "update " + ref.getTableName() + set + where;
-
-        List<String> nonPkColumns = ref.nonPkColumns().collect(Collectors.toList());
-        List<String> pkColumns = ref.pkColumns().collect(Collectors.toList());
-        for (Snapshot.Record rec : updateRecs()) {
-            try {
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                int i = 1;
-                for (String col : nonPkColumns)
-                    bindVar(stmt, rec.columnType(col), i++, rec.column(col));
-                for (String col : pkColumns)
-                    bindVar(stmt, rec.columnType(col), i++, rec.column(col));
-
-                output.info(stmt.toString());
-                stmt.executeUpdate();
+        List<TableMeta.Column> columns = ref.getTable().columns;
+        int[] pkIndices = ref.getTable().primaryKey.getPkIndices();
+        String where = Arrays.stream(pkIndices).mapToObj(i -> columns.get(i).name + " = ?").collect(Collectors.joining(" and ", " where ", ""));
+
+        Binder[] binders = ref.getTable().binders();
+        LobStore lobs = ref.getLobStore();
+        int executed = 0;
+        for (Map.Entry<BitSet, List<Snapshot.Key>> shape : updateShapes(getReference(), getTarget(), journal != null ? journal.ordered(updateKeys) : updateKeys).entrySet()) {
+            int[] changed = shape.getKey().stream().toArray();
+            String set = Arrays.stream(changed).mapToObj(i -> columns.get(i).name + " = ?").collect(Collectors.joining(", ", " set ", ""));
+            String sql = "update " + ref.getTableName() + set + where;
+            String operation = "update " + Arrays.stream(changed).mapToObj(i -> columns.get(i).name).collect(Collectors.joining(","));
+            List<Snapshot.Key> keys = shape.getValue();
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int from = 0; from < keys.size(); from += BATCH_SIZE)
+                    try {
+                        List<Snapshot.Key> batch = keys.subList(from, Math.min(from + BATCH_SIZE, keys.size()));
+                        for (Snapshot.Key key : batch) {
+                            Snapshot.Record rec = ref.getRecord(key);
+                            int p = 1;
+                            for (int i : changed)
+                                binders[i].bind(stmt, p++, rec.column(i), lobs);
+                            for (int i : pkIndices)
+                                binders[i].bind(stmt, p++, rec.column(i), null);
+
+                            if (output.isInfo())
+                                output.info(stmt.toString());
+                            stmt.addBatch();
+                        }
+                        executed++;
+                        stmt.executeBatch();
+                        if (journal != null)
+                            journal.applied(conn, operation, batch.get(batch.size() - 1), batch.size());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (SQLException e) {
+                        output.error(e.getMessage() + "\n" + sql);
+                        if (!continueOnError)
+                            throw new RuntimeException(e);
+                        stmt.clearBatch();
+                    } finally {
+                        if (lobs != null)
+                            lobs.closeStreams();
+                    }
             } catch (SQLException e) {
                 output.error(e.getMessage() + "\n" + sql);
                 if (!continueOnError)
                     throw new RuntimeException(e);
             }
         }
+        return executed;
+    }
+
+    /**
+     * Update keys grouped by the set of non-key columns that differ between the two sides,
+     * so that each group can run as one statement setting only those columns.
+     */
+    private Map<BitSet, List<Snapshot.Key>> updateShapes(Snapshot from, Snapshot to, List<Snapshot.Key> keys) {
+        Map<BitSet, List<Snapshot.Key>> shapes = new LinkedHashMap<>();
+        for (Snapshot.Key key : keys) {
+            BitSet changed = changedColumns(from.getRecord(key), to.getRecord(key));
+            if (!changed.isEmpty())
+                shapes.computeIfAbsent(changed, c -> new ArrayList<>()).add(key);
+        }
+        return shapes;
+    }
+
+    BitSet changedColumns(Snapshot.Record from, Snapshot.Record to) {
+        TableMeta table = reference.getTable();
+        BitSet changed = new BitSet(table.columns.size());
+        for (int i : table.nonPkIndices())
+            if ((useColumn == null || useColumn[i]) && !Objects.equals(from.column(i), to.column(i)))
+                changed.set(i);
+        return changed;
+    }
+
+    public int applyDelete(Connection conn, boolean continueOnError) {
+        return applyDelete(conn, continueOnError, null);
     }
 
-    public void applyDelete(Connection conn, boolean continueOnError) {
+    /**
+     * Executes the deletes and returns the number of statements and batches sent to the database.
+     */
+    public int applyDelete(Connection conn, boolean continueOnError, ImportJournal journal) {
         Snapshot ref = getReference();
-        String where = ref.getTable().getPkColumns().map(c -> c.name + " = ?").collect(Collectors.joining(" and ", " where ", ""));
+        List<TableMeta.Column> columns = ref.getTable().columns;
+        int[] pkIndices = ref.getTable().primaryKey.getPkIndices();
+        String where = Arrays.stream(pkIndices).mapToObj(i -> columns.get(i).name + " = ?").collect(Collectors.joining(" and ", " where ", ""));
         String sql = "delete " + ref.getTableName() + where;
 
-        List<String> pkColumns = ref.pkColumns().collect(Collectors.toList());
-        for (Snapshot.Record rec : deleteRecs()) {
-            try {
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                int i = 1;
-                for (String col : pkColumns)
-                    bindVar(stmt, rec.columnType(col), i++, rec.column(col));
-
-                output.info(stmt.toString());
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                output.error(e.getMessage() + "\n" + sql);
-                if (!continueOnError)
-                    throw new RuntimeException(e);
+        Binder[] binders = ref.getTable().binders();
+        int executed = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Snapshot.Key key : journal != null ? journal.ordered(deleteKeys) : deleteKeys) {
+                Snapshot.Record rec = getTarget().getRecord(key);
+                try {
+                    int p = 1;
+                    for (int i : pkIndices)
+                        binders[i].bind(stmt, p++, rec.column(i), null);
+
+                    if (output.isInfo())
+                        output.info(stmt.toString());
+                    executed++;
+                    stmt.executeUpdate();
+                    if (journal != null)
+                        journal.applied(conn, "delete", key, 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (SQLException e) {
+                    output.error(e.getMessage() + "\n" + sql);
+                    if (!continueOnError)
+                        throw new RuntimeException(e);
+                }
             }
+        } catch (SQLException e) {
+            output.error(e.getMessage() + "\n" + sql);
+            if (!continueOnError)
+                throw new RuntimeException(e);
         }
+        return executed;
     }
 
     private boolean alignRight(int type) {
@@ -187,80 +329,34 @@ public class ChangeSet {
         }
     }
 
-    private void bindVar(PreparedStatement stmt, int type, int index, String value) throws SQLException {
-        if (value == null)
-            stmt.setNull(index, type);
-        else
-            switch (type) {
-                case SMALLINT:
-                    stmt.setShort(index, Short.parseShort(value));
-                    break;
-                case TINYINT:
-                case INTEGER:
-                    stmt.setInt(index, Integer.parseInt(value));
-                    break;
-                case BIGINT:
-                    stmt.setLong(index, Long.parseLong(value));
-                    break;
-                case NUMERIC:
-                case DECIMAL:
-                    stmt.setBigDecimal(index, new BigDecimal(value));
-                    break;
-                case FLOAT:
-                    stmt.setFloat(index, Float.parseFloat(value));
-                    break;
-                case REAL:
-                case DOUBLE:
-                    stmt.setDouble(index, Double.parseDouble(value));
-                    break;
-                case BOOLEAN:
-                    stmt.setBoolean(index, Boolean.parseBoolean(value));
-                    break;
-                case DATE:
-                    stmt.setDate(index, java.sql.Date.valueOf(value));
-                    break;
-                case TIME:
-                    stmt.setTime(index, Time.valueOf(value));
-                    break;
-                case TIMESTAMP:
-                    stmt.setTimestamp(index, Timestamp.valueOf(value));
-                    break;
-                case TIME_WITH_TIMEZONE:
-                case TIMESTAMP_WITH_TIMEZONE:
-                case BINARY:
-                case BIT:
-                case NULL:
-                case OTHER:
-                case REF:
-                case ROWID:
-                case SQLXML:
-                case VARBINARY:
-                case NCLOB:
-                case CLOB:
-                    stmt.setClob(index, new SerialClob(value.toCharArray()));
-                    break;
-                case BLOB:
-                    stmt.setBlob(index, new SerialBlob(Base64.getDecoder().decode(value.getBytes())));
-                    break;
-                default:
-                    stmt.setString(index, value);
-                    break;
-            }
+    static void bindVar(PreparedStatement stmt, int type, int index, String value) throws SQLException {
+        bindVar(stmt, type, index, value, null);
+    }
+
+    static void bindVar(PreparedStatement stmt, int type, int index, String value, LobStore lobs) throws SQLException {
+        Binder.of(type).bind(stmt, index, value, lobs);
     }
 
     public List<String> sqlApplyStmt() {
         List<String> stmts = new ArrayList<>();
         stmts.addAll(deleteSqlStmt(getTarget(), deleteRecs()));
         stmts.addAll(insertSqlStmt(getReference(), insertRecs()));
-        stmts.addAll(updateSqlStmt(getReference(), updateRecs()));
+        stmts.addAll(updateSqlStmt(getReference(), getTarget()));
         return stmts;
     }
 
+    /**
+     * Whether LOB columns are held as digests of side files, which can not be written as SQL statements.
+     */
+    public boolean hasLobDigests() {
+        return getReference().getLobStore() != null;
+    }
+
     public List<String> sqlUndoStmt() {
         List<String> stmts = new ArrayList<>();
         stmts.addAll(deleteSqlStmt(getTarget(), insertRecs()));
         stmts.addAll(insertSqlStmt(getReference(), deleteRecs()));
-        stmts.addAll(updateSqlStmt(getTarget(), updateRecs()));
+        stmts.addAll(updateSqlStmt(getTarget(), getReference()));
         return stmts;
     }
 
@@ -286,18 +382,26 @@ public class ChangeSet {
         return stmts;
     }
 
-    private List<String> updateSqlStmt(Snapshot snpSht, List<Snapshot.Record> records) {
+    // Sets the columns that differ from the other side to the values of snpSht.
+    private List<String> updateSqlStmt(Snapshot snpSht, Snapshot other) {
         String sql = "update " + snpSht.getTableName();
+        List<TableMeta.Column> columns = snpSht.getTable().columns;
         List<String> stmts = new ArrayList<>();
-        for (Snapshot.Record rec : records) {
-            String set = snpSht.nonPkColumns().map(c -> c + " = " + formatSqlDataType(rec.columnType(c), rec.column(c))).collect(Collectors.joining(", ", " set ", ""));
-            String where = snpSht.getTable().getPkColumns().map(c -> c.name + " = " + rec.column(c.name)).collect(Collectors.joining(" and ", " where ", ""));
+        for (Snapshot.Key key : updateKeys) {
+            Snapshot.Record rec = snpSht.getRecord(key);
+            BitSet changed = changedColumns(rec, other.getRecord(key));
+            if (changed.isEmpty())
+                continue;
+            String set = changed.stream().mapToObj(i -> columns.get(i).name + " = " + formatSqlDataType(columns.get(i).datatype, rec.column(i))).collect(Collectors.joining(", ", " set ", ""));
+            String where = snpSht.getTable().getPkColumns().map(c -> c.name + " = " + formatSqlDataType(c.datatype, rec.column(c.name))).collect(Collectors.joining(" and ", " where ", ""));
             stmts.add(sql + set + where + ";");
         }
         return stmts;
     }
 
-    private String formatSqlDataType(int columnType, String value) {
+    static String formatSqlDataType(int columnType, String value) {
+        if (value == null)
+            return "null";
         switch (columnType) {
             case DATE:
                 return "DATE" + "'" + value + "'";
@@ -331,9 +435,14 @@ public class ChangeSet {
             case NULL:
                 return null;
             case BLOB:
+                if (LobStore.isDigest(value))
+                    throw new IllegalStateException("LOB digest " + value + " is no column value.");
                 return new BigInteger(Base64.getDecoder().decode(value.getBytes())).toString(16);
             case NCLOB:
             case CLOB:
+                if (LobStore.isDigest(value))
+                    throw new IllegalStateException("LOB digest " + value + " is no column value.");
+                return "'" + value + "'";
             default:
                 return "'" + value + "'";
         }
@@ -0,0 +1,139 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.databind.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class ChunkedExport {
+
+    public static final String MANIFEST_EXTENSION = "manifest";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public static ChunkedExport open(File path, String name, String table, String where, int pageSize) throws IOException {
+        File manifest = new File(path, name + "." + MANIFEST_EXTENSION);
+        ChunkedExport export;
+        if (manifest.exists()) {
+            export = MAPPER.readValue(manifest, ChunkedExport.class);
+            if (!export.table.equalsIgnoreCase(table) || !Objects.equals(export.where, where))
+                throw new RuntimeException("Manifest " + manifest + " belongs to a different export.");
+        } else
+            export = new ChunkedExport(table, where, pageSize);
+        export.path = path;
+        export.name = name;
+        return export;
+    }
+
+    String table;
+    String where;
+    int pageSize;
+    long rowCount;
+    List<String> lastKey;
+    List<String> chunks = new ArrayList<>();
+    boolean complete;
+
+    private File path;
+    private String name;
+
+    private final OutPut output = OutPut.getInstance();
+
+    public ChunkedExport() {
+    }
+
+    private ChunkedExport(String table, String where, int pageSize) {
+        this.table = table;
+        this.where = where;
+        this.pageSize = pageSize;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getWhere() {
+        return where;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public List<String> getLastKey() {
+        return lastKey;
+    }
+
+    public List<String> getChunks() {
+        return chunks;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void run(Crud crud) throws SQLException, IOException {
+        if (complete) {
+            output.userln("   Export already complete: " + chunks.size() + " chunks, " + rowCount + " rows");
+            return;
+        }
+        if (!chunks.isEmpty())
+            output.userln("   Resuming after chunk " + chunks.size() + " (" + rowCount + " rows)");
+
+        TableMeta meta = crud.tableMetaData(table);
+        if (meta.primaryKey == null)
+            throw new RuntimeException("Table " + table + " has no primary key to page by.");
+        List<TableMeta.Column> pkColumns = meta.getKeyColumns();
+
+        String[] after = lastKey != null ? lastKey.toArray(new String[0]) : null;
+        while (true) {
+            Snapshot page = crud.fetchPage(meta, where, after != null ? new Snapshot.Key(after) : null, pageSize);
+            if (page.isEmpty())
+                break;
+
+            List<Snapshot.Record> records = page.getRecords();
+            String[] last = records.get(records.size() - 1).key().columns().toArray(String[]::new);
+            page.setWhere(chunkWhere(pkColumns, after, last));
+
+            String chunk = String.format("%s_%05d.%s", name, chunks.size() + 1, Starter.FILE_EXTENSION);
+            try (OutputStream out = Files.newOutputStream(new File(path, chunk).toPath())) {
+                page.export(out);
+            }
+
+            chunks.add(chunk);
+            rowCount += records.size();
+            lastKey = Arrays.asList(last);
+            save();
+            output.userln("   " + rowCount + " rows so far, written " + chunk);
+
+            if (records.size() < pageSize)
+                break;
+            after = last;
+        }
+        complete = true;
+        save();
+    }
+
+    private String chunkWhere(List<TableMeta.Column> pkColumns, String[] after, String[] last) {
+        StringJoiner range = new StringJoiner(" and ");
+        if (where != null)
+            range.add("(" + where + ")");
+        if (after != null)
+            range.add(Crud.keysetPredicate(pkColumns, after));
+        range.add("not " + Crud.keysetPredicate(pkColumns, last));
+        return range.toString();
+    }
+
+    private void save() throws IOException {
+        File manifest = new File(path, name + "." + MANIFEST_EXTENSION);
+        File tmp = new File(path, name + "." + MANIFEST_EXTENSION + ".tmp");
+        MAPPER.writeValue(tmp, this);
+        Files.move(tmp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
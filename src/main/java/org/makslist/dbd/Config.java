@@ -12,19 +12,42 @@ public class Config {
             "           [h2, hsql, mysql, oracle, postgres]\n" +
             "           [{--hostname} url] [{--port} port number] [{--servicename} service name]\n" +
             "           [{--user} user name] [{--password} password] [{--commit} commit]\n" +
+            "           [{--threads} connections; tables are exported, compared and imported in parallel]\n" +
+            "           [{--logFile} file; append all messages with timestamp and level]\n" +
+            "           [{--offHeapIndex} keep the primary key index of snapshots outside the Java heap]\n" +
+            "           [{--report} file; write per-table timings and throughput as JSON when done]\n" +
+            "           [{--memoryBudget} MB of heap for one delta; larger ones are partitioned to temporary files]\n" +
             "           [{-i, --import} file or path to reference file(s)]\n" +
             "               [{-u, --undolog} save undo log]\n" +
             "               [{-c, --continueOnError} continue on error]\n" +
+            "               [{--parallelApply} apply a single file on all --threads connections, split by primary key]\n" +
+            "               [{--bulk} defer foreign keys and secondary indexes during the load, rebuild and validate after; requires --commit]\n" +
+            "               [{--commitRows} rows, {--commitSeconds} seconds; with --commit, commit in intervals and journal the last committed keys to resume]\n" +
             "               [{-f, --force} create table if it does not exist]\n" +
             "               [{--ignoreColumns} ignore columns when comparing]\n" +
+            "               [{--keysFirst} read primary keys first, full rows only for keys on both sides]\n" +
+            "               [{--hash} compare row hashes computed by the database, full rows only for differing hashes]\n" +
+            "               [{--at} version yyyyMMdd_HHmm to read from a .history directory, default the newest]\n" +
             "           [{-d, --delta} file or path to reference file(s)]\n" +
             "               [{--ignoreColumns} ignore columns when comparing]\n" +
+            "               [{--keysFirst} read primary keys first, full rows only for keys on both sides]\n" +
+            "               [{--hash} compare row hashes computed by the database, full rows only for differing hashes]\n" +
+            "               [{--at} version yyyyMMdd_HHmm to read from a .history directory, default the newest]\n" +
             "           [{-e, --export} name (incl. wildcards) of the table(s) entries to export]\n" +
             "               [{-w, --where} where statement]\n" +
             "               [{--timestamp} add a timestamp to the filename]\n" +
+            "               [{--pageSize} rows per chunk; pages by primary key and resumes from the manifest; ignores --timestamp]\n" +
+            "               [{--decoders} decoder threads; fetching, decoding and writing run as a pipeline]\n" +
+            "               [{--groupBy} columns; one file per distinct value, split in a single pass]\n" +
+            "               [{--bundle} name; write all tables into one <name>.bundle file, -i and -d read .bundle files]\n" +
+            "               [{--history} add a version to <table>.history, stored as delta to the previous one; {--rebaseEvery} versions per full base, default 30]\n" +
+            "               [{--sorted} write rows in primary key order; sorts through temporary files within --memoryBudget]\n" +
+            "               [{--lobFiles} write LOB contents to side files, keep only their digest in the snapshot]\n" +
+            "               [{--trackColumn} version/last-modified column or ora_rowscn; exports only rows changed since the last export]\n" +
             "           [{--table} exports table metadata; name (incl. wildcards) of the table(s) to export]\n" +
             "           [{--view} exports view metadata; name (incl. wildcards) of the table(s) to export]\n" +
-            "           [{--procedure} exports procedure metadata; name (incl. wildcards) of the table(s) to export]\n";
+            "           [{--procedure} exports procedure metadata; name (incl. wildcards) of the table(s) to export]\n" +
+            "       config.properties: fetchSize.<table>=rows overrides the fetch size derived from row width and round trip\n";
 
     private static Config loadConfig() {
         Config config = new Config();
@@ -40,6 +63,7 @@ public class Config {
             config.servicename = prop.getProperty("servicename", null);
             config.user = prop.getProperty("user", null);
             config.password = prop.getProperty("password", null);
+            config.threads = Integer.parseInt(prop.getProperty("threads", "-1"));
 
             config.continueOnError = Boolean.parseBoolean(prop.getProperty("continueOnError", "false"));
             config.autocommit = Boolean.parseBoolean(prop.getProperty("autocommit", "false"));
@@ -47,9 +71,31 @@ public class Config {
 
             config.undolog = Boolean.parseBoolean(prop.getProperty("undolog", "false"));
             config.forceInsert = Boolean.parseBoolean(prop.getProperty("forceInsert", "false"));
+            config.keysFirst = Boolean.parseBoolean(prop.getProperty("keysFirst", "false"));
+            config.hash = Boolean.parseBoolean(prop.getProperty("hash", "false"));
             String ignoreColumnsOption = prop.getProperty("ignoreColumns", "");
             config.ignoreColumns = ignoreColumnsOption.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(ignoreColumnsOption.split(",")));
             config.exportTime = Boolean.parseBoolean(prop.getProperty("timestamp", "false"));
+            config.pageSize = Integer.parseInt(prop.getProperty("pageSize", "-1"));
+            config.trackColumn = prop.getProperty("trackColumn", null);
+            config.lobFiles = Boolean.parseBoolean(prop.getProperty("lobFiles", "false"));
+            config.decoders = Integer.parseInt(prop.getProperty("decoders", "-1"));
+            config.report = prop.getProperty("report", null);
+            config.logFile = prop.getProperty("logFile", null);
+            config.offHeapIndex = Boolean.parseBoolean(prop.getProperty("offHeapIndex", "false"));
+            config.memoryBudget = Integer.parseInt(prop.getProperty("memoryBudget", "-1"));
+            config.sorted = Boolean.parseBoolean(prop.getProperty("sorted", "false"));
+            config.commitRows = Integer.parseInt(prop.getProperty("commitRows", "-1"));
+            config.bulk = Boolean.parseBoolean(prop.getProperty("bulk", "false"));
+            config.parallelApply = Boolean.parseBoolean(prop.getProperty("parallelApply", "false"));
+            config.commitSeconds = Integer.parseInt(prop.getProperty("commitSeconds", "-1"));
+            String groupByOption = prop.getProperty("groupBy", "");
+            config.groupBy = groupByOption.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(groupByOption.split(",")));
+            config.bundle = prop.getProperty("bundle");
+            config.history = Boolean.parseBoolean(prop.getProperty("history", "false"));
+            config.rebaseEvery = Integer.parseInt(prop.getProperty("rebaseEvery", "-1"));
+            config.at = prop.getProperty("at");
+            config.fetchSizes = FetchSize.overrides(prop);
         } catch (IOException ex) {
             return config;
         }
@@ -68,6 +114,7 @@ public class Config {
         CmdLineParser.Option<String> servicename = parser.addStringOption("servicename");
         CmdLineParser.Option<String> user = parser.addStringOption("user");
         CmdLineParser.Option<String> password = parser.addStringOption("password");
+        CmdLineParser.Option<Integer> threads = parser.addIntegerOption("threads");
 
         CmdLineParser.Option<Boolean> continueOnError = parser.addBooleanOption("continueOnError");
         CmdLineParser.Option<Boolean> autocommit = parser.addBooleanOption("autocommit");
@@ -77,10 +124,30 @@ public class Config {
         CmdLineParser.Option<Boolean> undolog = parser.addBooleanOption('r', "undolog");
         CmdLineParser.Option<Boolean> forceInsert = parser.addBooleanOption('f', "forceInsert");
         CmdLineParser.Option<String> ignoreColumns = parser.addStringOption("ignoreColumns");
+        CmdLineParser.Option<Boolean> keysFirst = parser.addBooleanOption("keysFirst");
+        CmdLineParser.Option<Boolean> hash = parser.addBooleanOption("hash");
 
         CmdLineParser.Option<String> exportTable = parser.addStringOption('e', "export");
         CmdLineParser.Option<Boolean> exportTime = parser.addBooleanOption("timestamp");
         CmdLineParser.Option<String> exportWhere = parser.addStringOption('w', "where");
+        CmdLineParser.Option<Integer> pageSize = parser.addIntegerOption("pageSize");
+        CmdLineParser.Option<String> trackColumn = parser.addStringOption("trackColumn");
+        CmdLineParser.Option<Boolean> lobFiles = parser.addBooleanOption("lobFiles");
+        CmdLineParser.Option<Integer> decoders = parser.addIntegerOption("decoders");
+        CmdLineParser.Option<String> report = parser.addStringOption("report");
+        CmdLineParser.Option<String> logFile = parser.addStringOption("logFile");
+        CmdLineParser.Option<Boolean> offHeapIndex = parser.addBooleanOption("offHeapIndex");
+        CmdLineParser.Option<Integer> memoryBudget = parser.addIntegerOption("memoryBudget");
+        CmdLineParser.Option<Boolean> sorted = parser.addBooleanOption("sorted");
+        CmdLineParser.Option<Integer> commitRows = parser.addIntegerOption("commitRows");
+        CmdLineParser.Option<Boolean> bulk = parser.addBooleanOption("bulk");
+        CmdLineParser.Option<Boolean> parallelApply = parser.addBooleanOption("parallelApply");
+        CmdLineParser.Option<Integer> commitSeconds = parser.addIntegerOption("commitSeconds");
+        CmdLineParser.Option<String> groupBy = parser.addStringOption("groupBy");
+        CmdLineParser.Option<String> bundle = parser.addStringOption("bundle");
+        CmdLineParser.Option<Boolean> history = parser.addBooleanOption("history");
+        CmdLineParser.Option<Integer> rebaseEvery = parser.addIntegerOption("rebaseEvery");
+        CmdLineParser.Option<String> at = parser.addStringOption("at");
 
         CmdLineParser.Option<String> showDeltaFor = parser.addStringOption('d', "delta");
 
@@ -107,6 +174,7 @@ public class Config {
         config.servicename = parser.getOptionValue(servicename, null);
         config.user = parser.getOptionValue(user, null);
         config.password = parser.getOptionValue(password, null);
+        config.threads = parser.getOptionValue(threads, -1);
 
         config.continueOnError = parser.getOptionValue(continueOnError, false);
         config.autocommit = parser.getOptionValue(autocommit, false);
@@ -115,12 +183,33 @@ public class Config {
         config.importFile = parser.getOptionValue(importFile, null);
         config.undolog = parser.getOptionValue(undolog, false);
         config.forceInsert = parser.getOptionValue(forceInsert, false);
+        config.keysFirst = parser.getOptionValue(keysFirst, false);
+        config.hash = parser.getOptionValue(hash, false);
         String ignoreColumnsOption = parser.getOptionValue(ignoreColumns, "");
         config.ignoreColumns = ignoreColumnsOption.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(ignoreColumnsOption.split(",")));
 
         config.exportTable = parser.getOptionValue(exportTable, null);
         config.exportTime = parser.getOptionValue(exportTime, false);
         config.exportWhere = parser.getOptionValue(exportWhere, null);
+        config.pageSize = parser.getOptionValue(pageSize, -1);
+        config.trackColumn = parser.getOptionValue(trackColumn, null);
+        config.lobFiles = parser.getOptionValue(lobFiles, false);
+        config.decoders = parser.getOptionValue(decoders, -1);
+        config.report = parser.getOptionValue(report, null);
+        config.logFile = parser.getOptionValue(logFile, null);
+        config.offHeapIndex = parser.getOptionValue(offHeapIndex, false);
+        config.memoryBudget = parser.getOptionValue(memoryBudget, -1);
+        config.sorted = parser.getOptionValue(sorted, false);
+        config.commitRows = parser.getOptionValue(commitRows, -1);
+        config.bulk = parser.getOptionValue(bulk, false);
+        config.parallelApply = parser.getOptionValue(parallelApply, false);
+        config.commitSeconds = parser.getOptionValue(commitSeconds, -1);
+        String groupByOption = parser.getOptionValue(groupBy, "");
+        config.groupBy = groupByOption.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(groupByOption.split(",")));
+        config.bundle = parser.getOptionValue(bundle, null);
+        config.history = parser.getOptionValue(history, false);
+        config.rebaseEvery = parser.getOptionValue(rebaseEvery, -1);
+        config.at = parser.getOptionValue(at, null);
 
         config.showDeltaFor = parser.getOptionValue(showDeltaFor, null);
 
@@ -141,6 +230,7 @@ public class Config {
         servicename = servicename != null ? servicename : config.servicename;
         user = user != null ? user : config.user;
         password = password != null ? password : config.password;
+        threads = threads != -1 ? threads : config.threads;
 
         continueOnError |= config.continueOnError;
         autocommit |= config.autocommit;
@@ -149,12 +239,33 @@ public class Config {
         importFile = importFile != null ? importFile : config.importFile;
         undolog |= config.undolog;
         forceInsert |= config.forceInsert;
+        keysFirst |= config.keysFirst;
+        hash |= config.hash;
         config.ignoreColumns.forEach(c -> {
             if (!ignoreColumns.contains(c)) ignoreColumns.add(c);
         });
         exportTable = exportTable != null ? exportTable : config.exportTable;
         exportTime |= config.exportTime;
         exportWhere = exportWhere != null ? exportWhere : config.exportWhere;
+        pageSize = pageSize != -1 ? pageSize : config.pageSize;
+        trackColumn = trackColumn != null ? trackColumn : config.trackColumn;
+        lobFiles |= config.lobFiles;
+        decoders = decoders != -1 ? decoders : config.decoders;
+        fetchSizes = config.fetchSizes;
+        report = report != null ? report : config.report;
+        logFile = logFile != null ? logFile : config.logFile;
+        offHeapIndex |= config.offHeapIndex;
+        memoryBudget = memoryBudget != -1 ? memoryBudget : config.memoryBudget;
+        sorted |= config.sorted;
+        commitRows = commitRows != -1 ? commitRows : config.commitRows;
+        bulk |= config.bulk;
+        parallelApply |= config.parallelApply;
+        commitSeconds = commitSeconds != -1 ? commitSeconds : config.commitSeconds;
+        groupBy = !groupBy.isEmpty() ? groupBy : config.groupBy;
+        bundle = bundle != null ? bundle : config.bundle;
+        history |= config.history;
+        rebaseEvery = rebaseEvery != -1 ? rebaseEvery : config.rebaseEvery;
+        at = at != null ? at : config.at;
 
         showDeltaFor = showDeltaFor != null ? showDeltaFor : config.showDeltaFor;
 
@@ -174,6 +285,7 @@ public class Config {
     private String servicename;
     private String user;
     private String password;
+    private int threads;
 
     private boolean continueOnError;
     private boolean autocommit;
@@ -182,10 +294,31 @@ public class Config {
     private String importFile;
     private boolean undolog;
     private boolean forceInsert;
+    private boolean keysFirst;
+    private boolean hash;
     private List<String> ignoreColumns = new ArrayList<>();
     private String exportTable;
     private boolean exportTime;
     private String exportWhere;
+    private int pageSize;
+    private String trackColumn;
+    private boolean lobFiles;
+    private int decoders;
+    private Map<String, Integer> fetchSizes = new HashMap<>();
+    private String report;
+    private String logFile;
+    private boolean offHeapIndex;
+    private int memoryBudget;
+    private boolean sorted;
+    private int commitRows;
+    private boolean bulk;
+    private boolean parallelApply;
+    private int commitSeconds;
+    private List<String> groupBy = new ArrayList<>();
+    private String bundle;
+    private boolean history;
+    private int rebaseEvery;
+    private String at;
     private String showDeltaFor;
     private String table;
     private String view;
@@ -223,6 +356,10 @@ public class Config {
         return password;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
     public boolean isContinueOnError() {
         return continueOnError;
     }
@@ -247,6 +384,14 @@ public class Config {
         return forceInsert;
     }
 
+    public boolean isKeysFirst() {
+        return keysFirst;
+    }
+
+    public boolean isHash() {
+        return hash;
+    }
+
     public List<String> getIgnoreColumns() {
         return ignoreColumns;
     }
@@ -263,6 +408,82 @@ public class Config {
         return exportWhere;
     }
 
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public String getTrackColumn() {
+        return trackColumn;
+    }
+
+    public boolean isLobFiles() {
+        return lobFiles;
+    }
+
+    public int getDecoders() {
+        return decoders;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget > 0 ? memoryBudget * 1024L * 1024L : -1;
+    }
+
+    public boolean isParallelApply() {
+        return parallelApply;
+    }
+
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public int getCommitRows() {
+        return commitRows;
+    }
+
+    public int getCommitSeconds() {
+        return commitSeconds;
+    }
+
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    public String getBundle() {
+        return bundle;
+    }
+
+    public boolean isHistory() {
+        return history;
+    }
+
+    public int getRebaseEvery() {
+        return rebaseEvery > 0 ? rebaseEvery : SnapshotHistory.REBASE_EVERY;
+    }
+
+    public String getAt() {
+        return at;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public boolean isOffHeapIndex() {
+        return offHeapIndex;
+    }
+
+    public String getLogFile() {
+        return logFile;
+    }
+
+    public String getReport() {
+        return report;
+    }
+
+    public Map<String, Integer> getFetchSizes() {
+        return fetchSizes;
+    }
+
     public String showDeltaFor() {
         return showDeltaFor;
     }
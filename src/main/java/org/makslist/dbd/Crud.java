@@ -1,5 +1,6 @@
 package org.makslist.dbd;
 
+import oracle.jdbc.OracleStatement;
 import oracle.jdbc.pool.*;
 import org.postgresql.ds.*;
 
@@ -9,20 +10,25 @@ import java.sql.*;
 import java.text.*;
 import java.util.Date;
 import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 import static java.sql.Types.*;
 
 public class Crud implements AutoCloseable {
 
-    public static final SimpleDateFormat SQL_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-    private static final DecimalFormat DECIMAL_FORMAT;
+    public static final ThreadLocal<SimpleDateFormat> SQL_DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+    private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SS"));
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = ThreadLocal.withInitial(() -> {
+        DecimalFormat format = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+        format.setMaximumFractionDigits(340);
+        return format;
+    });
 
-    private static OutPut output = OutPut.getInstance();
+    private static final int KEY_BATCH_SIZE = 500;
+    private static final int PIPELINE_BLOCK_SIZE = 1000;
 
-    static {
-        DECIMAL_FORMAT = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-        DECIMAL_FORMAT.setMaximumFractionDigits(340);
-    }
+    private static OutPut output = OutPut.getInstance();
 
     public static Crud connectHSQL(boolean autocommit) {
         try {
@@ -66,6 +72,10 @@ public class Crud implements AutoCloseable {
             ods.setURL("jdbc:oracle:thin:@//" + hostname + ":" + port + "/" + serviceName);
             ods.setUser(user);
             ods.setPassword(password);
+            Properties prefetch = new Properties();
+            prefetch.setProperty("defaultRowPrefetch", String.valueOf(FetchSize.DEFAULT_ROWS));
+            prefetch.setProperty("oracle.jdbc.defaultLobPrefetchSize", String.valueOf(FetchSize.LOB_PREFETCH));
+            ods.setConnectionProperties(prefetch);
             return new Crud(user, ods.getConnection(), autocommit);
         } catch (SQLException e) {
             output.error("Connection unsuccessful: " + e.getMessage());
@@ -88,28 +98,57 @@ public class Crud implements AutoCloseable {
 
     private final Connection conn;
     private final boolean isMixedCase;
+    private final String productName;
 
     private final String user;
 
+    private LobStore lobStore;
+    private Map<String, Integer> fetchSizes = Collections.emptyMap();
+    private FetchSize fetchSize;
+    private boolean suspendedAutoCommit;
+
     private Crud(String user, Connection conn, boolean autocommit) throws SQLException {
         this.user = user;
         this.conn = conn;
         this.conn.setAutoCommit(autocommit);
         this.isMixedCase = conn.getMetaData().storesMixedCaseIdentifiers();
+        this.productName = conn.getMetaData().getDatabaseProductName();
         Crud.output = OutPut.getInstance();
         output.userln("Connection established to " + conn.getMetaData().getDatabaseProductName() + " " +
                 conn.getMetaData().getDatabaseMajorVersion() + "." +
                 conn.getMetaData().getDatabaseMinorVersion() + " (user: " + this.user + ")");
     }
 
+    public void setLobStore(LobStore lobStore) {
+        this.lobStore = lobStore;
+    }
+
+    public void setFetchSizes(Map<String, Integer> fetchSizes) {
+        this.fetchSizes = fetchSizes;
+        this.fetchSize = null;
+    }
+
     public void execute(String sql) throws SQLException {
+        resumeAutoCommit();
         output.debug(sql);
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.executeUpdate();
         }
     }
 
+    /**
+     * Runs a query with a single number as result.
+     */
+    public long count(String sql) throws SQLException {
+        output.debug(sql);
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
     public void close() throws SQLException {
+        resumeAutoCommit();
         conn.close();
     }
 
@@ -126,6 +165,7 @@ public class Crud implements AutoCloseable {
     }
 
     public TableMeta tableMetaData(String tableName) throws SQLException {
+        long start = System.nanoTime();
         DatabaseMetaData metaData = conn.getMetaData();
         String userName = metaData.getUserName();
         String tableRemarks = null;
@@ -164,27 +204,60 @@ public class Crud implements AutoCloseable {
                 output.error("Table " + tableName + " has no primary key.");
         }
 
-        List<TableMeta.ForeignKey> fks = new ArrayList<>();
+        Map<String, List<TableMeta.ForeignKey.ColumnMapping>> fkMappings = new LinkedHashMap<>();
         try (ResultSet foreignKeys = metaData.getImportedKeys(null, null, tableName.toUpperCase())) {
-            String fkName = null;
-            List<TableMeta.ForeignKey.ColumnMapping> mapping = new ArrayList<>();
             while (foreignKeys.next()) {
-                fkName = foreignKeys.getString("FK_NAME");
+                String fkName = foreignKeys.getString("FK_NAME");
                 String pkTableName = foreignKeys.getString("PKTABLE_NAME");
                 String pkColumnName = foreignKeys.getString("PKCOLUMN_NAME");
                 String fkTableName = foreignKeys.getString("FKTABLE_NAME");
                 String fkColumnName = foreignKeys.getString("FKCOLUMN_NAME");
-                mapping.add(new TableMeta.ForeignKey.ColumnMapping(pkTableName.toLowerCase(), pkColumnName.toLowerCase(), fkTableName.toLowerCase(), fkColumnName.toLowerCase()));
+                fkMappings.computeIfAbsent(fkName != null ? fkName.toLowerCase() : "", n -> new ArrayList<>())
+                        .add(new TableMeta.ForeignKey.ColumnMapping(pkTableName.toLowerCase(), pkColumnName.toLowerCase(), fkTableName.toLowerCase(), fkColumnName.toLowerCase()));
             }
-            if (fkName != null)
-                fks.add(new TableMeta.ForeignKey(fkName.toLowerCase(), mapping));
         }
+        List<TableMeta.ForeignKey> fks = new ArrayList<>();
+        fkMappings.forEach((fkName, mapping) -> fks.add(new TableMeta.ForeignKey(fkName, mapping)));
 
+        Metrics.Table metrics = Metrics.getInstance().table(tableName);
+        metrics.since(Metrics.Phase.METADATA, start);
+        metrics.roundTrips(4);
         return new TableMeta(tableName.toLowerCase(), tableRemarks, columns, pk, fks);
     }
 
+    /**
+     * Reads the indexes of the table except the primary key's into the table metadata.
+     */
+    public List<TableMeta.Index> loadIndexes(TableMeta tableMeta) throws SQLException {
+        Map<String, TableMeta.Index> indexes = new LinkedHashMap<>();
+        try (ResultSet index = conn.getMetaData().getIndexInfo(null, null, tableMeta.name.toUpperCase(), false, true)) {
+            while (index.next()) {
+                String indexName = index.getString("INDEX_NAME");
+                if (indexName == null || index.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic)
+                    continue;
+                String column = index.getString("COLUMN_NAME").toLowerCase() + ("D".equals(index.getString("ASC_OR_DESC")) ? " desc" : "");
+                boolean unique = !index.getBoolean("NON_UNIQUE");
+                indexes.computeIfAbsent(indexName.toLowerCase(), n -> new TableMeta.Index(n, unique, new ArrayList<>())).columns.add(column);
+            }
+        }
+        if (tableMeta.primaryKey != null)
+            indexes.values().removeIf(i -> i.unique && new HashSet<>(i.columns).equals(new HashSet<>(tableMeta.primaryKey.columnNames)));
+        Metrics.getInstance().table(tableMeta.name).roundTrips(1);
+        tableMeta.setIndexes(new ArrayList<>(indexes.values()));
+        return tableMeta.getIndexes();
+    }
+
+    /**
+     * Switches off foreign keys and secondary indexes of the table for a bulk load, see {@link BulkLoad}.
+     */
+    public BulkLoad bulkLoad(String table) throws SQLException {
+        TableMeta tableMeta = tableMetaData(table);
+        loadIndexes(tableMeta);
+        return BulkLoad.begin(this, tableMeta);
+    }
+
     public List<String> allViews(String pattern) throws SQLException {
-        return View.all(user, pattern, conn);
+        return View.all(user, pattern, conn, FetchSize.DEFAULT_ROWS);
     }
 
     public View view(String name) throws SQLException {
@@ -192,7 +265,7 @@ public class Crud implements AutoCloseable {
     }
 
     public List<String> allProcedures(String pattern) throws SQLException {
-        return StoredProcedure.all(user, pattern, conn);
+        return StoredProcedure.all(user, pattern, conn, FetchSize.DEFAULT_ROWS);
     }
 
     public StoredProcedure procedure(String name) throws SQLException {
@@ -200,10 +273,122 @@ public class Crud implements AutoCloseable {
     }
 
     public ChangeSet delta(Snapshot snapshot, List<String> ignoreColumns) throws SQLException {
-        Snapshot current = fetch(snapshot.getTableName(), snapshot.getWhere());
+        return delta(snapshot, ignoreColumns, false);
+    }
+
+    /**
+     * Ignored columns are not selected and stay null in the current records, unless full rows are
+     * requested, e.g. for the undo log of deleted records.
+     */
+    public ChangeSet delta(Snapshot snapshot, List<String> ignoreColumns, boolean fullRows) throws SQLException {
+        TableMeta tableMeta = tableMetaData(snapshot.getTableName());
+        Snapshot current = fetch(tableMeta, snapshot.getWhere(), snapshot.getLobStore() != null ? LobStore.digestOnly() : null, fullRows ? null : projection(tableMeta, ignoreColumns));
+        return snapshot.delta(current, ignoreColumns);
+    }
+
+    public ChangeSet deltaByKeys(Snapshot snapshot, List<String> ignoreColumns) throws SQLException {
+        TableMeta tableMeta = tableMetaData(snapshot.getTableName());
+        Snapshot current = new Snapshot(tableMeta, snapshot.getWhere());
+        current.setLobStore(snapshot.getLobStore() != null ? LobStore.digestOnly() : null);
+        List<Snapshot.Key> common = new ArrayList<>();
+        for (Snapshot.Key key : fetchKeys(tableMeta, snapshot.getWhere()))
+            if (snapshot.containedInIndex(key))
+                common.add(key);
+            else
+                current.addKey(key);
+
+        fetchByKeys(current, common, projection(tableMeta, ignoreColumns));
+        return snapshot.delta(current, ignoreColumns);
+    }
+
+    /**
+     * Compares by row hashes computed in the database, see {@link RowHash}. Only primary key and hash are
+     * transferred; full rows are fetched for the keys whose hash differs from the reference record.
+     * Falls back to {@link #delta} if the database or a compared column type has no hash.
+     */
+    public ChangeSet deltaByHash(Snapshot snapshot, List<String> ignoreColumns) throws SQLException {
+        TableMeta tableMeta = tableMetaData(snapshot.getTableName());
+        RowHash hash = tableMeta.columns.equals(snapshot.getTable().columns) ? RowHash.of(productName, tableMeta, snapshot.useColumns(ignoreColumns)) : null;
+        if (hash == null) {
+            output.userln("   Row hashes are not supported for " + tableMeta.name + " on " + productName + ", comparing full rows");
+            return delta(snapshot, ignoreColumns);
+        }
+
+        Snapshot current = new Snapshot(tableMeta, snapshot.getWhere());
+        current.setLobStore(snapshot.getLobStore() != null ? LobStore.digestOnly() : null);
+        List<Snapshot.Key> mismatched = new ArrayList<>();
+        long rows = readHashes(tableMeta, snapshot.getWhere(), hash, (key, rowHash) -> {
+            Snapshot.Record reference = snapshot.getRecord(key);
+            if (reference == null)
+                current.addKey(key);
+            else if (hash.hash(reference).equals(rowHash))
+                current.addRecord(reference.columns().toArray(String[]::new));
+            else
+                mismatched.add(key);
+        });
+        output.debug("   " + mismatched.size() + " of " + rows + " row hashes differ");
+
+        fetchByKeys(current, mismatched, projection(tableMeta, ignoreColumns));
         return snapshot.delta(current, ignoreColumns);
     }
 
+    /**
+     * Counts the delta without keeping any rows, see {@link DeltaCount}. Current rows are read without
+     * the ignored columns, or as key and row hash if requested and supported. Tables without primary key
+     * or with columns in another order than the snapshot are counted from the full delta.
+     */
+    public DeltaCount countDelta(Snapshot snapshot, List<String> ignoreColumns, boolean byHash) throws SQLException {
+        TableMeta tableMeta = tableMetaData(snapshot.getTableName());
+        if (snapshot.getTable().primaryKey == null || tableMeta.primaryKey == null || !tableMeta.columns.equals(snapshot.getTable().columns)) {
+            ChangeSet change = delta(snapshot, ignoreColumns);
+            return new DeltaCount(change.insertRecs().size(), change.updateRecs().size(), change.deleteRecs().size());
+        }
+
+        boolean[] useColumn = snapshot.useColumns(ignoreColumns);
+        DeltaCount count = new DeltaCount(snapshot, useColumn);
+        RowHash hash = byHash ? RowHash.of(productName, tableMeta, useColumn) : null;
+        if (byHash && hash == null)
+            output.userln("   Row hashes are not supported for " + tableMeta.name + " on " + productName + ", comparing full rows");
+
+        if (hash != null) {
+            readHashes(tableMeta, snapshot.getWhere(), hash, (key, rowHash) -> count.current(key, rowHash, hash));
+            return count;
+        }
+
+        int[] columns = projection(tableMeta, ignoreColumns);
+        String sql = "select " + selectList(tableMeta, columns) + " from " + tableMeta.name + (snapshot.getWhere() != null ? " where " + snapshot.getWhere() : "");
+        List<TableMeta.Column> selected = selected(tableMeta, columns);
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta, selected), selected)) {
+            read(stmt, tableMeta, columns, snapshot.getLobStore() != null ? LobStore.digestOnly() : null, count::current);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    // Streams primary key and row hash of every row.
+    private long readHashes(TableMeta tableMeta, String whereStmt, RowHash hash, BiConsumer<Snapshot.Key, String> handler) throws SQLException {
+        List<TableMeta.Column> keyColumns = tableMeta.getKeyColumns();
+        String sql = "select " + keyColumns.stream().map(c -> c.name).collect(Collectors.joining(", ")) + ", " + hash.sql() + " from " + tableMeta.name + (whereStmt != null ? " where " + whereStmt : "");
+        long rows = 0;
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta, keyColumns), keyColumns)) {
+            long start = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String[] values = new String[keyColumns.size()];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = readColumn(rs, i + 1, keyColumns.get(i), null);
+                    handler.accept(new Snapshot.Key(values), hash.read(rs, values.length + 1));
+                    rows++;
+                }
+            }
+            Metrics.Table metrics = Metrics.getInstance().table(tableMeta.name);
+            metrics.since(Metrics.Phase.QUERY, start);
+            metrics.roundTrips(roundTrips(rows, stmt.getFetchSize()));
+        }
+        return rows;
+    }
+
     public boolean existsOrCreate(Snapshot snapshot, boolean createTable) {
         try {
             DatabaseMetaData meta = conn.getMetaData();
@@ -233,154 +418,676 @@ public class Crud implements AutoCloseable {
     }
 
     public Snapshot fetch(String table, String whereStmt) throws SQLException {
+        return fetch(table, whereStmt, lobStore);
+    }
+
+    private Snapshot fetch(String table, String whereStmt, LobStore lobs) throws SQLException {
+        return fetch(tableMetaData(table), whereStmt, lobs, null);
+    }
+
+    private Snapshot fetch(TableMeta tableMeta, String whereStmt, LobStore lobs, int[] columns) throws SQLException {
+        String sql = "select " + selectList(tableMeta, columns) + " from " + tableMeta.name + (whereStmt != null ? " where " + whereStmt : "");
+        List<TableMeta.Column> selected = selected(tableMeta, columns);
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta, selected), selected)) {
+            Snapshot snapshot = new Snapshot(tableMeta, whereStmt);
+            snapshot.setLobStore(lobs);
+            read(stmt, snapshot, columns);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Positions of the columns to select, or null for all: the primary key and the columns not ignored.
+     */
+    static int[] projection(TableMeta tableMeta, List<String> ignoreColumns) {
+        if (ignoreColumns.isEmpty())
+            return null;
+        Set<String> pkColumns = tableMeta.getPkColumns().map(c -> c.name).collect(Collectors.toSet());
+        return IntStream.range(0, tableMeta.columns.size())
+                .filter(i -> !ignoreColumns.contains(tableMeta.columns.get(i).name) || pkColumns.contains(tableMeta.columns.get(i).name))
+                .toArray();
+    }
+
+    private static String selectList(TableMeta tableMeta, int[] columns) {
+        return columns == null ? "*" : Arrays.stream(columns).mapToObj(i -> tableMeta.columns.get(i).name).collect(Collectors.joining(", "));
+    }
+
+    private static List<TableMeta.Column> selected(TableMeta tableMeta, int[] columns) {
+        return columns == null ? tableMeta.columns : Arrays.stream(columns).mapToObj(tableMeta.columns::get).collect(Collectors.toList());
+    }
+
+    public long export(String table, String whereStmt, OutputStream out, int decoders) throws SQLException, IOException {
         TableMeta tableMeta = tableMetaData(table);
+        Snapshot header = new Snapshot(tableMeta, whereStmt);
+        header.setLobStore(lobStore);
 
         String sql = "select * from " + table + (whereStmt != null ? " where " + whereStmt : "");
-        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            stmt.setFetchSize(1000);
-            ResultSet rs = stmt.executeQuery();
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int columnCount = tableMeta.columns.size();
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta), tableMeta.columns);
+             SnapshotWriter writer = new SnapshotWriter(out, header, whereStmt)) {
+            Metrics.Table metrics = Metrics.getInstance().table(table);
+            long start = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery();
+                 Pipeline<List<Object[]>, List<String[]>> pipeline = new Pipeline<>(decoders,
+                         block -> {
+                             long decodeStart = System.nanoTime();
+                             List<String[]> rows = new ArrayList<>(block.size());
+                             long bytes = 0;
+                             for (Object[] values : block) {
+                                 String[] row = decodeRecord(values, tableMeta);
+                                 bytes += width(row);
+                                 rows.add(row);
+                             }
+                             metrics.rows(rows.size(), bytes);
+                             metrics.since(Metrics.Phase.DECODE, decodeStart);
+                             return rows;
+                         },
+                         rows -> {
+                             for (String[] row : rows)
+                                 writer.write(row);
+                         })) {
+                List<Object[]> block = new ArrayList<>(PIPELINE_BLOCK_SIZE);
+                long rowCount = 0;
+                while (rs.next()) {
+                    if (++rowCount % 100000 == 0)
+                        output.userln("   " + rowCount + " rows so far");
+                    block.add(readValues(rs, tableMeta, lobStore));
+                    if (block.size() == PIPELINE_BLOCK_SIZE) {
+                        if (!pipeline.put(block))
+                            break;
+                        block = new ArrayList<>(PIPELINE_BLOCK_SIZE);
+                    }
+                }
+                if (!block.isEmpty())
+                    pipeline.put(block);
+                metrics.since(Metrics.Phase.QUERY, start);
+                metrics.roundTrips(roundTrips(rowCount, stmt.getFetchSize()));
+            } catch (InterruptedException e) {
+                writer.abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export of " + table + " interrupted");
+            } catch (SQLException | IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            }
+            return writer.getCount();
+        }
+    }
 
-//            String columnName = isMixedCase ? rsmd.getColumnName(i) : rsmd.getColumnName(i).toLowerCase();
+    /**
+     * Splits the table into one snapshot per group while the rows stream from the result set.
+     */
+    public GroupedExport exportGrouped(String table, String whereStmt, List<String> groupBy, File path) throws SQLException, IOException {
+        TableMeta tableMeta = tableMetaData(table);
+        Snapshot header = new Snapshot(tableMeta, whereStmt);
+        header.setLobStore(lobStore);
+
+        GroupedExport export = new GroupedExport(header, groupBy, path);
+        try {
+            scan(tableMeta, whereStmt, lobStore, export::add);
+            export.finish();
+            return export;
+        } finally {
+            export.close();
+        }
+    }
+
+    /**
+     * Writes the table in primary key order without an order by in the query: rows are sorted in runs that
+     * fit the memory budget, spilled to temporary files and merged into the snapshot.
+     */
+    public long exportSorted(String table, String whereStmt, OutputStream out, long memoryBudget) throws SQLException, IOException {
+        TableMeta tableMeta = tableMetaData(table);
+        int runSize = ExternalSort.runSize(tableMeta, memoryBudget);
+        Snapshot header = new Snapshot(tableMeta, whereStmt);
+        header.setLobStore(lobStore);
+
+        try (ExternalSort sort = new ExternalSort(tableMeta, runSize)) {
+            scan(tableMeta, whereStmt, lobStore, sort::add);
+            if (sort.getRuns() > 0)
+                output.info("   merging " + sort.getRuns() + " sorted runs");
+            try (SnapshotWriter writer = new SnapshotWriter(out, header, whereStmt)) {
+                try {
+                    sort.writeTo(writer);
+                } catch (IOException | RuntimeException e) {
+                    writer.abort();
+                    throw e;
+                }
+                return writer.getCount();
+            }
+        }
+    }
+
+    private void fetchByKeys(Snapshot snapshot, List<Snapshot.Key> keys, int[] columns) throws SQLException {
+        TableMeta tableMeta = snapshot.getTable();
+        List<TableMeta.Column> keyColumns = tableMeta.getKeyColumns();
+        List<TableMeta.Column> selected = selected(tableMeta, columns);
+        String select = "select " + selectList(tableMeta, columns) + " from " + tableMeta.name + " where " + (snapshot.getWhere() != null ? "(" + snapshot.getWhere() + ") and " : "");
+        String keyMatch = keyColumns.stream().map(c -> c.name + " = ?").collect(Collectors.joining(" and ", "(", ")"));
+
+        for (int from = 0; from < keys.size(); from += KEY_BATCH_SIZE) {
+            List<Snapshot.Key> batch = keys.subList(from, Math.min(from + KEY_BATCH_SIZE, keys.size()));
+            String sql = select + (keyColumns.size() == 1
+                    ? keyColumns.get(0).name + batch.stream().map(k -> "?").collect(Collectors.joining(", ", " in (", ")"))
+                    : batch.stream().map(k -> keyMatch).collect(Collectors.joining(" or ", "(", ")")));
+            try (PreparedStatement stmt = prepareQuery(sql, Math.min(batch.size(), fetchSize().rows(tableMeta, selected)), selected)) {
+                int idx = 1;
+                for (Snapshot.Key key : batch) {
+                    String[] values = key.columns().toArray(String[]::new);
+                    for (int i = 0; i < values.length; i++)
+                        ChangeSet.bindVar(stmt, keyColumns.get(i).datatype, idx++, values[i]);
+                }
+                read(stmt, snapshot, columns);
+            }
+        }
+    }
+
+    public Snapshot fetchPage(TableMeta tableMeta, String whereStmt, Snapshot.Key after, int pageSize) throws SQLException {
+        List<TableMeta.Column> pkColumns = tableMeta.getKeyColumns();
+        StringJoiner where = new StringJoiner(" and ", " where ", "").setEmptyValue("");
+        if (whereStmt != null)
+            where.add("(" + whereStmt + ")");
+        if (after != null)
+            where.add(keysetPredicate(pkColumns, null));
 
+        String orderBy = pkColumns.stream().map(c -> c.name).collect(Collectors.joining(", ", " order by ", ""));
+        String sql = "select * from " + tableMeta.name + where + orderBy + limitClause(pageSize);
+        try (PreparedStatement stmt = prepareQuery(sql, Math.min(pageSize, fetchSize().rows(tableMeta)), tableMeta.columns)) {
+            if (after != null) {
+                String[] key = after.columns().toArray(String[]::new);
+                int idx = 1;
+                for (int i = 0; i < pkColumns.size(); i++)
+                    for (int j = 0; j <= i; j++)
+                        ChangeSet.bindVar(stmt, pkColumns.get(j).datatype, idx++, key[j]);
+            }
             Snapshot snapshot = new Snapshot(tableMeta, whereStmt);
+            snapshot.setLobStore(lobStore);
+            read(stmt, snapshot);
+            return snapshot;
+        }
+    }
+
+    public Snapshot fetchIncremental(String table, String whereStmt, String trackColumn, Snapshot previous) throws SQLException {
+        TableMeta tableMeta = tableMetaData(table);
+        if (previous == null || previous.getHighWaterMark() == null || !trackColumn.equalsIgnoreCase(previous.getTrackColumn())
+                || !Objects.equals(whereStmt, previous.getWhere()) || !tableMeta.columns.equals(previous.getTable().columns)) {
+            output.userln("   No usable previous export, fetching all rows");
+            return fetchChanges(tableMeta, whereStmt, trackColumn, null);
+        }
+
+        Snapshot changes = fetchChanges(tableMeta, whereStmt, trackColumn, previous.getHighWaterMark());
+        previous.merge(changes);
+        int deleted = previous.retain(fetchKeys(tableMeta, whereStmt));
+        output.userln("   " + changes.getRecords().size() + " changed and " + deleted + " deleted rows since " + previous.getTrackColumn() + " " + changes.getHighWaterMark());
+        return previous;
+    }
+
+    public Snapshot fetchChanges(TableMeta tableMeta, String whereStmt, String trackColumn, String since) throws SQLException {
+        int markType = markType(tableMeta, trackColumn);
+        StringJoiner where = new StringJoiner(" and ", " where ", "").setEmptyValue("");
+        if (whereStmt != null)
+            where.add("(" + whereStmt + ")");
+        if (since != null)
+            where.add(trackColumn + " > ?");
+
+        String sql = "select t.*, " + trackColumn + " from " + tableMeta.name + " t" + where;
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta), tableMeta.columns)) {
+            if (since != null)
+                ChangeSet.bindVar(stmt, markType, 1, since);
+
+            Snapshot changes = new Snapshot(tableMeta, whereStmt);
+            changes.setLobStore(lobStore);
+            String highWaterMark = since;
+            long start = System.nanoTime();
+            long bytes = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                int markIndex = tableMeta.columns.size() + 1;
+                while (rs.next()) {
+                    String[] record = readRecord(rs, tableMeta, lobStore);
+                    bytes += width(record);
+                    changes.addRecord(record);
+                    String mark = readMark(rs, markIndex, markType);
+                    if (mark != null && (highWaterMark == null || compareMark(markType, mark, highWaterMark) > 0))
+                        highWaterMark = mark;
+                }
+            }
+            Metrics.Table metrics = Metrics.getInstance().table(tableMeta.name);
+            metrics.since(Metrics.Phase.QUERY, start);
+            metrics.rows(changes.getRecords().size(), bytes);
+            metrics.roundTrips(roundTrips(changes.getRecords().size(), stmt.getFetchSize()));
+            changes.setTrackColumn(trackColumn);
+            changes.setHighWaterMark(highWaterMark);
+            return changes;
+        }
+    }
+
+    public Set<Snapshot.Key> fetchKeys(TableMeta tableMeta, String whereStmt) throws SQLException {
+        List<TableMeta.Column> keyColumns = tableMeta.getKeyColumns();
+        String sql = "select " + keyColumns.stream().map(c -> c.name).collect(Collectors.joining(", ")) + " from " + tableMeta.name + (whereStmt != null ? " where " + whereStmt : "");
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta, keyColumns), keyColumns)) {
+            Set<Snapshot.Key> keys = new HashSet<>();
+            long start = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String[] key = new String[keyColumns.size()];
+                    for (int i = 0; i < key.length; i++)
+                        key[i] = readColumn(rs, i + 1, keyColumns.get(i), null);
+                    keys.add(new Snapshot.Key(key));
+                }
+            }
+            Metrics.Table metrics = Metrics.getInstance().table(tableMeta.name);
+            metrics.since(Metrics.Phase.QUERY, start);
+            metrics.roundTrips(roundTrips(keys.size(), stmt.getFetchSize()));
+            return keys;
+        }
+    }
+
+    private PreparedStatement prepareQuery(String sql, int fetchRows, List<TableMeta.Column> columns) throws SQLException {
+        suspendAutoCommit();
+        PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchRows);
+        if (isOracle() && FetchSize.hasLobs(columns))
+            stmt.unwrap(OracleStatement.class).setLobPrefetchSize(FetchSize.LOB_PREFETCH);
+        return stmt;
+    }
+
+    private FetchSize fetchSize() {
+        if (fetchSize == null) {
+            long roundTrip = roundTrip();
+            output.debug("Round trip to " + productName + " takes " + roundTrip / 1000 + " us");
+            fetchSize = new FetchSize(fetchSizes, roundTrip);
+        }
+        return fetchSize;
+    }
+
+    private long roundTrip() {
+        String sql = isOracle() ? "select 1 from dual" : productName.startsWith("HSQL") ? "values 1" : "select 1";
+        long best = Long.MAX_VALUE;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        } catch (SQLException e) {
+            output.debug("Round trip not measurable: " + e.getMessage());
+            return 0;
+        }
+        return best;
+    }
+
+    // Postgres only streams a result set through a cursor inside a transaction; otherwise it reads the whole result at once.
+    private void suspendAutoCommit() throws SQLException {
+        if ("PostgreSQL".equalsIgnoreCase(productName) && conn.getAutoCommit()) {
+            conn.setAutoCommit(false);
+            suspendedAutoCommit = true;
+        }
+    }
+
+    private void resumeAutoCommit() throws SQLException {
+        if (suspendedAutoCommit) {
+            conn.setAutoCommit(true);
+            suspendedAutoCommit = false;
+        }
+    }
+
+    String productName() {
+        return productName;
+    }
+
+    boolean isOracle() {
+        return "Oracle".equalsIgnoreCase(productName);
+    }
+
+    boolean isAutoCommit() throws SQLException {
+        return conn.getAutoCommit();
+    }
+
+    private int markType(TableMeta tableMeta, String trackColumn) {
+        if ("ora_rowscn".equalsIgnoreCase(trackColumn))
+            return NUMERIC;
+        Integer index = tableMeta.columnIndex.get(trackColumn.toLowerCase());
+        if (index == null)
+            throw new RuntimeException("Column " + trackColumn + " does not exist in table " + tableMeta.name + ".");
+        return tableMeta.columns.get(index).datatype;
+    }
+
+    private String readMark(ResultSet rs, int i, int type) throws SQLException {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case NUMERIC:
+            case DECIMAL:
+                BigDecimal number = rs.getBigDecimal(i);
+                return number != null ? number.toPlainString() : null;
+            case DATE:
+                java.sql.Date date = rs.getDate(i);
+                return date != null ? date.toString() : null;
+            case TIMESTAMP:
+                Timestamp timestamp = rs.getTimestamp(i);
+                return timestamp != null ? timestamp.toString() : null;
+            default:
+                return rs.getString(i);
+        }
+    }
+
+    private int compareMark(int type, String mark, String other) {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case NUMERIC:
+            case DECIMAL:
+                return new BigDecimal(mark).compareTo(new BigDecimal(other));
+            default:
+                return mark.compareTo(other);
+        }
+    }
+
+    static String keysetPredicate(List<TableMeta.Column> pkColumns, String[] key) {
+        StringJoiner or = new StringJoiner(" or ", "(", ")");
+        for (int i = 0; i < pkColumns.size(); i++) {
+            StringJoiner and = new StringJoiner(" and ", "(", ")");
+            for (int j = 0; j <= i; j++) {
+                TableMeta.Column column = pkColumns.get(j);
+                String value = key == null ? "?" : ChangeSet.formatSqlDataType(column.datatype, key[j] != null ? key[j].replace("'", "''") : null);
+                and.add(column.name + (j < i ? " = " : " > ") + value);
+            }
+            or.add(and.toString());
+        }
+        return or.toString();
+    }
+
+    private String limitClause(int rows) {
+        return "MySQL".equalsIgnoreCase(productName) ? " limit " + rows : " fetch first " + rows + " rows only";
+    }
+
+    public long scan(TableMeta tableMeta, String whereStmt, LobStore lobs, RowHandler handler) throws SQLException, IOException {
+        String sql = "select * from " + tableMeta.name + (whereStmt != null ? " where " + whereStmt : "");
+        try (PreparedStatement stmt = prepareQuery(sql, fetchSize().rows(tableMeta), tableMeta.columns)) {
+            return read(stmt, tableMeta, lobs, handler);
+        }
+    }
+
+    private void read(PreparedStatement stmt, Snapshot snapshot) throws SQLException {
+        read(stmt, snapshot, null);
+    }
+
+    private void read(PreparedStatement stmt, Snapshot snapshot, int[] columns) throws SQLException {
+        try {
+            read(stmt, snapshot.getTable(), columns, snapshot.getLobStore(), snapshot::addRecord);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long read(PreparedStatement stmt, TableMeta tableMeta, LobStore lobs, RowHandler handler) throws SQLException, IOException {
+        return read(stmt, tableMeta, null, lobs, handler);
+    }
+
+    private long read(PreparedStatement stmt, TableMeta tableMeta, int[] columns, LobStore lobs, RowHandler handler) throws SQLException, IOException {
+        long queryNanos = 0;
+        long decodeNanos = 0;
+        long bytes = 0;
+        long rowCount = 0;
+        long start = System.nanoTime();
+        try (ResultSet rs = stmt.executeQuery()) {
+//            String columnName = isMixedCase ? rsmd.getColumnName(i) : rsmd.getColumnName(i).toLowerCase();
 
-            long rowCount = 0;
             while (rs.next()) {
                 if (++rowCount % 100000 == 0)
                     output.userln("   " + rowCount + " rows so far");
-                String[] record = new String[columnCount];
-
-                for (int i = 1; i <= tableMeta.columns.size(); i++)
-                    switch (tableMeta.columns.get(i - 1).datatype) {
-                        case BINARY:
-                        case VARBINARY:
-                        case LONGVARBINARY:
-                            try {
-                                byte[] bytes = rs.getBytes(i);
-                                record[i - 1] = rs.wasNull() ? null : new String(Base64.getEncoder().encode(bytes));
-                            } catch (SQLException e) {
-                                record[i - 1] = null;
-                            }
-                            break;
-                        default:
-                            break;
-                    }
+                Object[] values = readValues(rs, tableMeta, columns, lobs);
+                long decodeStart = System.nanoTime();
+                queryNanos += decodeStart - start;
+                String[] record = decodeRecord(values, tableMeta);
+                start = System.nanoTime();
+                decodeNanos += start - decodeStart;
+                bytes += width(record);
+                handler.accept(record);
+            }
+        }
+        queryNanos += System.nanoTime() - start;
 
-                for (int i = 1; i <= tableMeta.columns.size(); i++)
-                    switch (tableMeta.columns.get(i - 1).datatype) {
-                        case TINYINT:
-                        case SMALLINT:
-                            short sho = rs.getShort(i);
-                            record[i - 1] = rs.wasNull() ? null : String.valueOf(sho);
-                            break;
-                        case INTEGER:
-                            int in = rs.getInt(i);
-                            record[i - 1] = rs.wasNull() ? null : String.valueOf(in);
-                            break;
-                        case BIGINT:
-                            long lon = rs.getLong(i);
-                            record[i - 1] = rs.wasNull() ? null : String.valueOf(lon);
-                            break;
-                        case NUMERIC:
-                        case DECIMAL:
-                            BigDecimal bigDecimal = rs.getBigDecimal(i);
-                            record[i - 1] = rs.wasNull() ? null : DECIMAL_FORMAT.format(bigDecimal);
-                            break;
-                        case FLOAT:
-                            float floa = rs.getFloat(i);
-                            record[i - 1] = rs.wasNull() ? null : String.valueOf(floa);
-                            break;
-                        case REAL:
-                        case DOUBLE:
-                            double doub = rs.getDouble(i);
-                            record[i - 1] = rs.wasNull() ? null : String.valueOf(doub);
-                            break;
-                        case NULL:
-                            record[i - 1] = null;
-                            break;
-                        case DATE:
-                            java.sql.Date date = rs.getDate(i);
-                            record[i - 1] = rs.wasNull() ? null : SQL_DATE_FORMAT.format(date);
-                            break;
-                        case TIME:
-                            Time time = rs.getTime(i);
-                            record[i - 1] = rs.wasNull() ? null : time.toLocalTime().toString();
-                            break;
-                        case TIMESTAMP:
-                            Timestamp timestamp = rs.getTimestamp(i);
-                            record[i - 1] = rs.wasNull() ? null : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SS").format(new Date(timestamp.getTime()));
-                            break;
-                        case NCLOB:
-                        case CLOB:
-                            Clob clob = rs.getClob(i);
-                            record[i - 1] = rs.wasNull() ? null : clob.getSubString(1, (int) clob.length());
-                            break;
-                        case BLOB:
-                            Blob blob = rs.getBlob(i);
-                            record[i - 1] = rs.wasNull() ? null : new String(Base64.getEncoder().encode(blob.getBytes(1L, (int) blob.length())));
-                            break;
-                        case BINARY:
-                        case VARBINARY:
-                        case LONGVARBINARY:
-                            // get bytes as last
-                            break;
-                        case SQLXML:
-                            output.error("Datatype: " + rsmd.getColumnType(i) + " is not supported.");
-                            break;
-                        case TIME_WITH_TIMEZONE:
-                        case TIMESTAMP_WITH_TIMEZONE:
-                        case BIT:
-                        case BOOLEAN:
-                            boolean bool = rs.getBoolean(i);
-                            record[i - 1] = rs.wasNull() ? null : String.valueOf(bool);
-                            break;
-                        case OTHER:
-                        case JAVA_OBJECT:
-                        case ARRAY:
-                        case STRUCT:
-                        case DISTINCT:
-                        case REF:
-                            output.error("ResultSetSerializer not yet implemented for SQL type REF");
-                            break;
-                        case NVARCHAR:
-                        case VARCHAR:
-                        case LONGNVARCHAR:
-                        case LONGVARCHAR:
-                        default:
-                            String string = rs.getString(i);
-                            record[i - 1] = rs.wasNull() ? null : string;
-                            break;
+        Metrics.Table metrics = Metrics.getInstance().table(tableMeta.name);
+        metrics.time(Metrics.Phase.QUERY, queryNanos);
+        metrics.time(Metrics.Phase.DECODE, decodeNanos);
+        metrics.rows(rowCount, bytes);
+        metrics.roundTrips(roundTrips(rowCount, stmt.getFetchSize()));
+        return rowCount;
+    }
+
+    // Bytes of the record's values encoded as UTF-8.
+    private static long width(String[] record) {
+        long width = 0;
+        for (String value : record)
+            if (value != null)
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c < 0x80)
+                        width++;
+                    else if (c < 0x800)
+                        width += 2;
+                    else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        width += 4;
+                        i++;
+                    } else
+                        width += 3;
+                }
+        return width;
+    }
+
+    private static long roundTrips(long rows, int fetchSize) {
+        return 1 + rows / Math.max(1, fetchSize);
+    }
+
+    private String[] readRecord(ResultSet rs, TableMeta tableMeta, LobStore lobs) throws SQLException {
+        return decodeRecord(readValues(rs, tableMeta, lobs), tableMeta);
+    }
+
+    private Object[] readValues(ResultSet rs, TableMeta tableMeta, LobStore lobs) throws SQLException {
+        return readValues(rs, tableMeta, null, lobs);
+    }
+
+    // Columns not selected stay null.
+    private Object[] readValues(ResultSet rs, TableMeta tableMeta, int[] columns, LobStore lobs) throws SQLException {
+        Object[] values = new Object[tableMeta.columns.size()];
+        int selected = columns != null ? columns.length : values.length;
+
+        for (int i = 1; i <= selected; i++) {
+            int c = columns != null ? columns[i - 1] : i - 1;
+            switch (tableMeta.columns.get(c).datatype) {
+                case BINARY:
+                case VARBINARY:
+                case LONGVARBINARY:
+                    try {
+                        values[c] = readValue(rs, i, tableMeta.columns.get(c), lobs);
+                    } catch (SQLException e) {
+                        values[c] = null;
                     }
+                    break;
+                default:
+                    break;
+            }
+        }
 
-                snapshot.addRecord(record);
+        for (int i = 1; i <= selected; i++) {
+            int c = columns != null ? columns[i - 1] : i - 1;
+            switch (tableMeta.columns.get(c).datatype) {
+                case BINARY:
+                case VARBINARY:
+                case LONGVARBINARY:
+                    // get bytes as last
+                    break;
+                default:
+                    values[c] = readValue(rs, i, tableMeta.columns.get(c), lobs);
+                    break;
             }
-            return snapshot;
+        }
+        return values;
+    }
+
+    private static String[] decodeRecord(Object[] values, TableMeta tableMeta) {
+        String[] record = new String[values.length];
+        for (int i = 0; i < values.length; i++)
+            record[i] = decode(values[i], tableMeta.columns.get(i).datatype);
+        return record;
+    }
+
+    private String readColumn(ResultSet rs, int i, TableMeta.Column column, LobStore lobs) throws SQLException {
+        return decode(readValue(rs, i, column, lobs), column.datatype);
+    }
+
+    private Object readValue(ResultSet rs, int i, TableMeta.Column column, LobStore lobs) throws SQLException {
+        Object value;
+        switch (column.datatype) {
+            case TINYINT:
+            case SMALLINT:
+                value = rs.getShort(i);
+                break;
+            case INTEGER:
+                value = rs.getInt(i);
+                break;
+            case BIGINT:
+                value = rs.getLong(i);
+                break;
+            case NUMERIC:
+            case DECIMAL:
+                value = rs.getBigDecimal(i);
+                break;
+            case FLOAT:
+                value = rs.getFloat(i);
+                break;
+            case REAL:
+            case DOUBLE:
+                value = rs.getDouble(i);
+                break;
+            case NULL:
+                return null;
+            case DATE:
+                value = rs.getDate(i);
+                break;
+            case TIME:
+                value = rs.getTime(i);
+                break;
+            case TIMESTAMP:
+                value = rs.getTimestamp(i);
+                break;
+            case NCLOB:
+            case CLOB:
+                Clob clob = rs.getClob(i);
+                if (rs.wasNull())
+                    return null;
+                return lobs != null ? lobs.store(clob) : clob.getSubString(1, (int) clob.length());
+            case BLOB:
+                Blob blob = rs.getBlob(i);
+                if (rs.wasNull())
+                    return null;
+                return lobs != null ? lobs.store(blob) : blob.getBytes(1L, (int) blob.length());
+            case BINARY:
+            case VARBINARY:
+            case LONGVARBINARY:
+                value = rs.getBytes(i);
+                break;
+            case SQLXML:
+                output.error("Datatype: " + column.datatype + " is not supported.");
+                return null;
+            case TIME_WITH_TIMEZONE:
+            case TIMESTAMP_WITH_TIMEZONE:
+            case BIT:
+            case BOOLEAN:
+                value = rs.getBoolean(i);
+                break;
+            case OTHER:
+            case JAVA_OBJECT:
+            case ARRAY:
+            case STRUCT:
+            case DISTINCT:
+            case REF:
+                output.error("ResultSetSerializer not yet implemented for SQL type REF");
+                return null;
+            case NVARCHAR:
+            case VARCHAR:
+            case LONGNVARCHAR:
+            case LONGVARCHAR:
+            default:
+                value = rs.getString(i);
+                break;
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    private static String decode(Object value, int datatype) {
+        if (value == null || value instanceof String)
+            return (String) value;
+        switch (datatype) {
+            case NUMERIC:
+            case DECIMAL:
+                return DECIMAL_FORMAT.get().format(value);
+            case DATE:
+                return SQL_DATE_FORMAT.get().format(value);
+            case TIME:
+                return ((Time) value).toLocalTime().toString();
+            case TIMESTAMP:
+                return TIMESTAMP_FORMAT.get().format(new Date(((Timestamp) value).getTime()));
+            case BLOB:
+            case BINARY:
+            case VARBINARY:
+            case LONGVARBINARY:
+                return new String(Base64.getEncoder().encode((byte[]) value));
+            default:
+                return String.valueOf(value);
         }
     }
 
     public List<String> apply(ChangeSet changes, boolean commit, boolean continueOnError) throws SQLException {
+        return apply(changes, commit, continueOnError, null);
+    }
+
+    /**
+     * Applies the changes, committing in the intervals of the journal if one is given.
+     */
+    public List<String> apply(ChangeSet changes, boolean commit, boolean continueOnError, ImportJournal journal) throws SQLException {
+        resumeAutoCommit();
+        Metrics.Table metrics = Metrics.getInstance().table(changes.table());
         if (!changes.insertRecs().isEmpty())
             output.userln("   Inserting " + changes.insertRecs().size() + " rows");
-        changes.applyInsert(conn, continueOnError);
+        long start = System.nanoTime();
+        metrics.roundTrips(changes.applyInsert(conn, continueOnError, journal));
+        metrics.since(Metrics.Phase.INSERT, start);
         if (!changes.updateRecs().isEmpty())
             output.userln("   Updating " + changes.updateRecs().size() + " rows");
-        changes.applyUpdate(conn, continueOnError);
+        start = System.nanoTime();
+        metrics.roundTrips(changes.applyUpdate(conn, continueOnError, journal));
+        metrics.since(Metrics.Phase.UPDATE, start);
         if (!changes.deleteRecs().isEmpty())
             output.userln("   Deleting " + changes.deleteRecs().size() + " rows");
-        changes.applyDelete(conn, continueOnError);
-        if (commit)
+        start = System.nanoTime();
+        metrics.roundTrips(changes.applyDelete(conn, continueOnError, journal));
+        metrics.since(Metrics.Phase.DELETE, start);
+        if (commit && journal != null)
+            try {
+                journal.commit(conn);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        else if (commit)
             commit();
 
-        return changes.sqlUndoStmt();
+        return changes.hasLobDigests() ? Collections.emptyList() : changes.sqlUndoStmt();
     }
 
     public void commit() throws SQLException {
+        resumeAutoCommit();
         conn.commit();
     }
 
     public void rollback() throws SQLException {
+        resumeAutoCommit();
         conn.rollback();
     }
 
@@ -395,4 +1102,8 @@ public class Crud implements AutoCloseable {
         }
     }
 
+    public interface RowHandler {
+        void accept(String[] record) throws IOException;
+    }
+
 }
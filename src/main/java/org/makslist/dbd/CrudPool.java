@@ -0,0 +1,150 @@
+package org.makslist.dbd;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+public class CrudPool implements AutoCloseable {
+
+    public static CrudPool open(int size, Supplier<Crud> connect) {
+        List<Crud> connections = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            connections.add(connect.get());
+        return new CrudPool(connections);
+    }
+
+    private final List<Crud> connections;
+    private final BlockingQueue<Crud> idle;
+
+    private final OutPut output = OutPut.getInstance();
+
+    public CrudPool(List<Crud> connections) {
+        this.connections = connections;
+        this.idle = new LinkedBlockingQueue<>(connections);
+    }
+
+    public Crud primary() {
+        return connections.get(0);
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public <T> void forEach(List<T> items, Task<T> task) throws InterruptedException {
+        if (connections.size() == 1) {
+            for (T item : items)
+                try {
+                    task.run(item, primary());
+                } catch (Exception e) {
+                    output.error("   Error: " + e.getMessage());
+                }
+            return;
+        }
+
+        ExecutorService executor = Threads.newTableExecutor(connections.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (T item : items)
+                futures.add(executor.submit(() -> {
+                    Crud crud = idle.take();
+                    try {
+                        task.run(item, crud);
+                    } finally {
+                        idle.add(crud);
+                    }
+                    return null;
+                }));
+            for (Future<?> future : futures)
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    output.error("   Error: " + e.getCause().getMessage());
+                }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Applies the changes of one table on all connections concurrently, split by primary key hash.
+     * Only if every part succeeds are all connections committed, otherwise all of them are rolled back.
+     * Tables referencing themselves are applied on the primary connection, as their rows may depend on
+     * rows of another part. Connections in autocommit can not roll back a failed part, the changes are then
+     * applied on the primary connection as well.
+     */
+    public List<String> apply(ChangeSet changes, boolean commit, boolean continueOnError) throws SQLException, InterruptedException {
+        if (connections.size() == 1 || changes.isSelfReferencing()) {
+            if (connections.size() > 1)
+                output.userln("   Table " + changes.table() + " references itself, applied on one connection");
+            return primary().apply(changes, commit, continueOnError);
+        }
+        if (isAutoCommit()) {
+            output.userln("   Autocommit can not roll back a parallel apply, table " + changes.table() + " applied on one connection");
+            return primary().apply(changes, commit, continueOnError);
+        }
+
+        List<ChangeSet> parts = changes.split(connections.size());
+        ExecutorService executor = Threads.newTableExecutor(connections.size());
+        List<String> undo = new ArrayList<>();
+        Exception failure = null;
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < parts.size(); i++) {
+                Crud crud = connections.get(i);
+                ChangeSet part = parts.get(i);
+                futures.add(executor.submit(() -> crud.apply(part, false, continueOnError)));
+            }
+            for (Future<List<String>> future : futures)
+                try {
+                    undo.addAll(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    else
+                        failure.addSuppressed(e.getCause());
+                }
+        } finally {
+            executor.shutdown();
+        }
+
+        if (failure != null) {
+            rollback();
+            if (failure instanceof SQLException)
+                throw (SQLException) failure;
+            throw failure instanceof RuntimeException ? (RuntimeException) failure : new RuntimeException(failure);
+        }
+        if (commit)
+            commit();
+        return undo;
+    }
+
+    private boolean isAutoCommit() throws SQLException {
+        for (Crud crud : connections)
+            if (crud.isAutoCommit())
+                return true;
+        return false;
+    }
+
+    public void commit() throws SQLException {
+        for (Crud crud : connections)
+            crud.commit();
+    }
+
+    public void rollback() throws SQLException {
+        for (Crud crud : connections)
+            crud.rollback();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        for (Crud crud : connections)
+            crud.close();
+    }
+
+    public interface Task<T> {
+        void run(T item, Crud crud) throws Exception;
+    }
+
+}
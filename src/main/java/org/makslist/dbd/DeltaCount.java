@@ -0,0 +1,79 @@
+package org.makslist.dbd;
+
+import java.util.*;
+
+/**
+ * Counts of a delta without its rows, for summary reports. Current rows are streamed against the reference
+ * index and dropped; a bit per reference record marks the ones seen, the records never seen are inserts.
+ */
+public class DeltaCount {
+
+    private final Snapshot reference;
+    private final int[] pkIndices;
+    private final boolean[] useColumn;
+    private final BitSet seen;
+    private long inserts;
+    private long updates;
+    private long deletes;
+
+    DeltaCount(long inserts, long updates, long deletes) {
+        this(null, null);
+        this.inserts = inserts;
+        this.updates = updates;
+        this.deletes = deletes;
+    }
+
+    DeltaCount(Snapshot reference, boolean[] useColumn) {
+        this.reference = reference;
+        this.pkIndices = reference != null ? reference.getTable().primaryKey.getPkIndices() : null;
+        this.useColumn = useColumn;
+        this.seen = new BitSet(reference != null ? reference.getRecords().size() : 0);
+    }
+
+    /**
+     * A current row, compared on the used columns.
+     */
+    void current(String[] record) {
+        String[] key = new String[pkIndices.length];
+        for (int i = 0; i < pkIndices.length; i++)
+            key[i] = record[pkIndices[i]];
+        int position = seen(new Snapshot.Key(key));
+        if (position >= 0 && !reference.getRecords().get(position).equals(record, useColumn))
+            updates++;
+    }
+
+    /**
+     * A current row by key and hash, compared against the hash of the reference record.
+     */
+    void current(Snapshot.Key key, String hash, RowHash rowHash) {
+        int position = seen(key);
+        if (position >= 0 && !rowHash.hash(reference.getRecords().get(position)).equals(hash))
+            updates++;
+    }
+
+    private int seen(Snapshot.Key key) {
+        int position = reference.position(key);
+        if (position < 0)
+            deletes++;
+        else
+            seen.set(position);
+        return position;
+    }
+
+    public long getInserts() {
+        return reference != null ? reference.getRecords().size() - seen.cardinality() : inserts;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public long getDeletes() {
+        return deletes;
+    }
+
+    public boolean isEmpty() {
+        return getInserts() + updates + deletes == 0;
+    }
+
+}
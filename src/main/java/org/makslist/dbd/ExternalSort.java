@@ -0,0 +1,193 @@
+package org.makslist.dbd;
+
+import java.io.*;
+import java.math.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+import static java.sql.Types.*;
+
+/**
+ * Sorts records into primary key order with bounded memory: sorted runs are spilled to temporary record
+ * files and merged k-way when written.
+ */
+public class ExternalSort implements Closeable {
+
+    public static final int DEFAULT_RUN_SIZE = 100_000;
+
+    // Heap per record in a run relative to its estimated width on the wire.
+    private static final int HEAP_PER_ROW_BYTE = 4;
+
+    public static int runSize(TableMeta table, long memoryBudget) {
+        if (memoryBudget <= 0)
+            return DEFAULT_RUN_SIZE;
+        long rowHeap = (long) FetchSize.rowWidth(table.columns) * HEAP_PER_ROW_BYTE;
+        return (int) Math.max(1000, Math.min(Integer.MAX_VALUE - 8, memoryBudget / Math.max(1, rowHeap)));
+    }
+
+    /**
+     * Orders records by their primary key columns, or by all columns for tables without one.
+     * Whole-number and decimal columns compare numerically, all others as text; nulls come first.
+     */
+    public static Comparator<String[]> keyOrder(TableMeta table) {
+        int[] indices = table.primaryKey != null && table.primaryKey.getPkIndices() != null
+                ? table.primaryKey.getPkIndices()
+                : table.columns.stream().mapToInt(c -> c.position - 1).toArray();
+        return order(table, indices, indices);
+    }
+
+    /**
+     * The same order as {@link #keyOrder(TableMeta)} for the values of primary keys.
+     */
+    public static Comparator<String[]> keyValueOrder(TableMeta table) {
+        int[] pkIndices = table.primaryKey.getPkIndices();
+        return order(table, IntStream.range(0, pkIndices.length).toArray(), pkIndices);
+    }
+
+    private static Comparator<String[]> order(TableMeta table, int[] indices, int[] columns) {
+        boolean[] numeric = new boolean[indices.length];
+        for (int i = 0; i < indices.length; i++)
+            numeric[i] = isNumeric(table.columns.get(columns[i]).datatype);
+
+        return (a, b) -> {
+            for (int i = 0; i < indices.length; i++) {
+                int c = compare(a[indices[i]], b[indices[i]], numeric[i]);
+                if (c != 0)
+                    return c;
+            }
+            return 0;
+        };
+    }
+
+    private static int compare(String a, String b, boolean numeric) {
+        if (a == null || b == null)
+            return a == null ? (b == null ? 0 : -1) : 1;
+        if (numeric)
+            try {
+                return new BigDecimal(a).compareTo(new BigDecimal(b));
+            } catch (NumberFormatException e) {
+                // fall back to text order
+            }
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumeric(int datatype) {
+        switch (datatype) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case NUMERIC:
+            case DECIMAL:
+            case FLOAT:
+            case REAL:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private final Comparator<String[]> order;
+    private final int runSize;
+    private final List<String[]> buffer = new ArrayList<>();
+    private final List<RecordFile> runs = new ArrayList<>();
+    private File directory;
+
+    public ExternalSort(TableMeta table, int runSize) {
+        this.order = keyOrder(table);
+        this.runSize = runSize;
+    }
+
+    public void add(String[] record) throws IOException {
+        buffer.add(record);
+        if (buffer.size() >= runSize)
+            spill();
+    }
+
+    private void spill() throws IOException {
+        if (directory == null)
+            directory = Files.createTempDirectory("dbd-sort").toFile();
+        buffer.sort(order);
+        RecordFile run = new RecordFile(new File(directory, "run_" + runs.size() + ".rec"));
+        try (RecordFile.Appender appender = run.append()) {
+            for (String[] record : buffer)
+                appender.write(record);
+        }
+        runs.add(run);
+        buffer.clear();
+    }
+
+    public int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Writes all added records in key order. Equal keys keep the order they were added in.
+     */
+    public void writeTo(SnapshotWriter writer) throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(order);
+            for (String[] record : buffer)
+                writer.write(record);
+            buffer.clear();
+            return;
+        }
+
+        if (!buffer.isEmpty())
+            spill();
+        PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> {
+            int c = order.compare(a.record, b.record);
+            return c != 0 ? c : Integer.compare(a.run, b.run);
+        });
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Head head = new Head(i, runs.get(i).read());
+                if (head.advance())
+                    heads.add(head);
+                else
+                    head.cursor.close();
+            }
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                writer.write(head.record);
+                if (head.advance())
+                    heads.add(head);
+                else
+                    head.cursor.close();
+            }
+        } finally {
+            for (Head head : heads)
+                head.cursor.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RecordFile run : runs)
+            run.delete();
+        runs.clear();
+        if (directory != null)
+            Files.deleteIfExists(directory.toPath());
+    }
+
+    private static class Head {
+
+        final int run;
+        final RecordFile.Cursor cursor;
+        String[] record;
+
+        Head(int run, RecordFile.Cursor cursor) {
+            this.run = run;
+            this.cursor = cursor;
+        }
+
+        boolean advance() throws IOException {
+            record = cursor.next();
+            return record != null;
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.makslist.dbd;
+
+import java.util.*;
+
+import static java.sql.Types.*;
+
+public class FetchSize {
+
+    public static final int DEFAULT_ROWS = 1000;
+    public static final int LOB_PREFETCH = 32 * 1024;
+    public static final String PROPERTY_PREFIX = "fetchSize.";
+
+    static final int MIN_ROWS = 10;
+    static final int MAX_ROWS = 50000;
+
+    private static final long MIN_BYTES = 256 * 1024;
+    private static final long MAX_BYTES = 16 * 1024 * 1024;
+    private static final long BYTES_PER_MILLI = 128 * 1024;
+    private static final int MAX_COLUMN_WIDTH = 4000;
+
+    public static Map<String, Integer> overrides(Properties prop) {
+        Map<String, Integer> overrides = new HashMap<>();
+        for (String name : prop.stringPropertyNames())
+            if (name.startsWith(PROPERTY_PREFIX))
+                overrides.put(name.substring(PROPERTY_PREFIX.length()).toLowerCase(), Integer.parseInt(prop.getProperty(name).trim()));
+        return overrides;
+    }
+
+    private final Map<String, Integer> overrides;
+    private final long roundTripNanos;
+
+    public FetchSize(Map<String, Integer> overrides, long roundTripNanos) {
+        this.overrides = overrides;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    public int rows(TableMeta table) {
+        return rows(table, table.columns);
+    }
+
+    /**
+     * Rows to fetch per round trip when selecting the given columns of the table; the table's override wins.
+     */
+    public int rows(TableMeta table, List<TableMeta.Column> columns) {
+        Integer override = overrides.get(table.name.toLowerCase());
+        return override != null ? override : rows(rowWidth(columns));
+    }
+
+    // The slower a round trip, the more bytes are worth fetching per trip; the wider a row, the fewer rows fit in them.
+    int rows(int rowWidth) {
+        long bytes = clamp(roundTripNanos / 1_000_000 * BYTES_PER_MILLI, MIN_BYTES, MAX_BYTES);
+        return (int) clamp(bytes / Math.max(1, rowWidth), MIN_ROWS, MAX_ROWS);
+    }
+
+    static int rowWidth(List<TableMeta.Column> columns) {
+        int width = 0;
+        for (TableMeta.Column column : columns)
+            width += columnWidth(column);
+        return width;
+    }
+
+    static int columnWidth(TableMeta.Column column) {
+        switch (column.datatype) {
+            case BIT:
+            case BOOLEAN:
+            case TINYINT:
+                return 1;
+            case SMALLINT:
+                return 2;
+            case INTEGER:
+            case REAL:
+            case FLOAT:
+                return 4;
+            case BIGINT:
+            case DOUBLE:
+            case DATE:
+            case TIME:
+                return 8;
+            case TIMESTAMP:
+            case TIME_WITH_TIMEZONE:
+            case TIMESTAMP_WITH_TIMEZONE:
+                return 13;
+            case NUMERIC:
+            case DECIMAL:
+                return column.columnSize > 0 ? Math.min(column.columnSize, 38) / 2 + 2 : 22;
+            case CLOB:
+            case NCLOB:
+            case BLOB:
+                return LOB_PREFETCH;
+            default:
+                return column.columnSize > 0 ? Math.min(column.columnSize, MAX_COLUMN_WIDTH) : MAX_COLUMN_WIDTH;
+        }
+    }
+
+    static boolean hasLobs(List<TableMeta.Column> columns) {
+        return columns.stream().anyMatch(c -> c.datatype == CLOB || c.datatype == NCLOB || c.datatype == BLOB);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+}
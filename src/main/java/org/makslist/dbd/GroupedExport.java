@@ -0,0 +1,149 @@
+package org.makslist.dbd;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.sql.Types.*;
+
+/**
+ * Splits records into one snapshot per distinct value of the group columns in a single pass.
+ * Records are appended to a spill file per group, of which only the most recently used stay open;
+ * when all records are added, every spill file is streamed into its snapshot.
+ */
+public class GroupedExport implements Closeable {
+
+    public static final int MAX_OPEN_GROUPS = 64;
+
+    private final Snapshot header;
+    private final List<String> groupBy;
+    private final int[] groupIndices;
+    private final File path;
+    private final File directory;
+    private final Map<List<String>, RecordFile> groups = new LinkedHashMap<>();
+    private final Map<List<String>, RecordFile.Appender> open;
+    private long rowCount;
+
+    public GroupedExport(Snapshot header, List<String> groupBy, File path) throws IOException {
+        this(header, groupBy, path, MAX_OPEN_GROUPS);
+    }
+
+    public GroupedExport(Snapshot header, List<String> groupBy, File path, int maxOpen) throws IOException {
+        TableMeta table = header.getTable();
+        this.header = header;
+        this.groupBy = groupBy;
+        this.groupIndices = new int[groupBy.size()];
+        for (int i = 0; i < groupBy.size(); i++) {
+            Integer index = table.columnIndex.get(groupBy.get(i).toLowerCase());
+            if (index == null)
+                throw new RuntimeException("Column does not exist in table.");
+            groupIndices[i] = index;
+        }
+        this.path = path;
+        this.directory = Files.createTempDirectory("dbd-groups").toFile();
+        this.open = new LinkedHashMap<List<String>, RecordFile.Appender>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, RecordFile.Appender> eldest) {
+                if (size() <= maxOpen)
+                    return false;
+                try {
+                    eldest.getValue().close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            }
+        };
+    }
+
+    public void add(String[] record) throws IOException {
+        String[] values = new String[groupIndices.length];
+        for (int i = 0; i < groupIndices.length; i++)
+            values[i] = record[groupIndices[i]];
+        List<String> group = Arrays.asList(values);
+
+        RecordFile.Appender appender = open.get(group);
+        if (appender == null) {
+            RecordFile spill = groups.computeIfAbsent(group, g -> new RecordFile(new File(directory, "group_" + groups.size() + ".rec")));
+            appender = spill.append();
+            try {
+                open.put(group, appender);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        appender.write(record);
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Writes a snapshot per group to the target path, named after the table and the group values,
+     * restricted to the group by its where condition.
+     */
+    public List<File> finish() throws IOException {
+        for (RecordFile.Appender appender : open.values())
+            appender.close();
+        open.clear();
+
+        List<File> files = new ArrayList<>();
+        for (Map.Entry<List<String>, RecordFile> group : groups.entrySet()) {
+            StringJoiner filename = new StringJoiner("_", "", "." + Starter.FILE_EXTENSION).add(header.getTableName()).add(String.join("_", group.getKey()));
+            File file = new File(path, filename.toString());
+            try (SnapshotWriter writer = new SnapshotWriter(Files.newOutputStream(file.toPath()), header, where(group.getKey()));
+                 RecordFile.Cursor cursor = group.getValue().read()) {
+                for (String[] record = cursor.next(); record != null; record = cursor.next())
+                    writer.write(record);
+            }
+            group.getValue().delete();
+            files.add(file);
+        }
+        return files;
+    }
+
+    private String where(List<String> group) {
+        StringJoiner where = new StringJoiner(" and ");
+        if (header.getWhere() != null)
+            where.add(header.getWhere());
+        for (int i = 0; i < group.size(); i++)
+            where.add(groupBy.get(i) + condition(header.getTable().columns.get(groupIndices[i]), group.get(i)));
+        return where.toString();
+    }
+
+    private static String condition(TableMeta.Column column, String value) {
+        if (value == null)
+            return " is null";
+        switch (column.datatype) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case NUMERIC:
+            case DECIMAL:
+            case FLOAT:
+            case REAL:
+            case DOUBLE:
+                return " = " + value;
+            default:
+                return " = '" + value.replace("'", "''") + "'";
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RecordFile.Appender appender : open.values())
+            appender.close();
+        open.clear();
+        for (RecordFile spill : groups.values())
+            spill.delete();
+        Files.deleteIfExists(directory.toPath());
+    }
+
+}
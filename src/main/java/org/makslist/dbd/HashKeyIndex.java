@@ -0,0 +1,30 @@
+package org.makslist.dbd;
+
+import java.util.*;
+
+public class HashKeyIndex implements KeyIndex {
+
+    private final Map<Snapshot.Key, Integer> positions = new HashMap<>();
+
+    @Override
+    public int get(Snapshot.Key key) {
+        Integer position = positions.get(key);
+        return position != null ? position : -1;
+    }
+
+    @Override
+    public void put(Snapshot.Key key, int position) {
+        positions.put(key, position);
+    }
+
+    @Override
+    public void clear() {
+        positions.clear();
+    }
+
+    @Override
+    public int size() {
+        return positions.size();
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.databind.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Commits an import every n rows or seconds and records the last committed key per operation in a journal
+ * file. Operations apply their keys in primary key order, so the recorded key tells how far an import got.
+ * A failed import is resumed by the delta recomputed against the table, which no longer holds the committed
+ * rows; no key is skipped, as a later change to a key already passed has to be applied as well.
+ * The journal is removed when the import completes.
+ */
+public class ImportJournal {
+
+    public static final String EXTENSION = "journal";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public static ImportJournal open(File path, Snapshot reference, File referenceFile, int commitRows, int commitSeconds) throws IOException {
+        String table = reference.getTableName().toLowerCase();
+        File file = new File(path, table + "." + EXTENSION);
+        ImportJournal journal = null;
+        if (file.exists()) {
+            journal = MAPPER.readValue(file, ImportJournal.class);
+            if (!journal.table.equalsIgnoreCase(table) || !journal.reference.equals(referenceFile.getPath()) || journal.referenceModified != referenceFile.lastModified()) {
+                OutPut.getInstance().userln("   Journal " + file + " belongs to a different reference file, starting over");
+                journal = null;
+            } else
+                OutPut.getInstance().userln("   Resuming the import journaled in " + file + " with the remaining delta");
+        }
+        if (journal == null)
+            journal = new ImportJournal(table, referenceFile.getPath(), referenceFile.lastModified());
+        journal.file = file;
+        journal.order = ExternalSort.keyValueOrder(reference.getTable());
+        journal.commitRows = commitRows;
+        journal.commitNanos = TimeUnit.SECONDS.toNanos(commitSeconds);
+        return journal;
+    }
+
+    String table;
+    String reference;
+    long referenceModified;
+    Map<String, List<String>> lastKeys = new TreeMap<>();
+
+    private File file;
+    private Comparator<String[]> order;
+    private int commitRows;
+    private long commitNanos;
+    private String scope = "";
+    private final Map<String, List<String>> pending = new HashMap<>();
+    private long pendingRows;
+    private long lastCommit = System.nanoTime();
+    private long commits;
+
+    public ImportJournal() {
+    }
+
+    private ImportJournal(String table, String reference, long referenceModified) {
+        this.table = table;
+        this.reference = reference;
+        this.referenceModified = referenceModified;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public long getReferenceModified() {
+        return referenceModified;
+    }
+
+    public Map<String, List<String>> getLastKeys() {
+        return lastKeys;
+    }
+
+    /**
+     * Prefix for the following operations, e.g. the partition of a partitioned import.
+     */
+    public void scope(String scope) {
+        this.scope = scope != null ? scope + " " : "";
+    }
+
+    public long commits() {
+        return commits;
+    }
+
+    /**
+     * Keys of an operation in the order they have to be applied in.
+     */
+    List<Snapshot.Key> ordered(List<Snapshot.Key> keys) {
+        List<Snapshot.Key> ordered = new ArrayList<>(keys);
+        ordered.sort((a, b) -> order.compare(a.values(), b.values()));
+        return ordered;
+    }
+
+    /**
+     * Notes rows applied up to the key and commits if the interval is reached.
+     */
+    void applied(Connection conn, String operation, Snapshot.Key key, int rows) throws SQLException, IOException {
+        pending.put(scope + operation, Arrays.asList(key.values()));
+        pendingRows += rows;
+        if ((commitRows > 0 && pendingRows >= commitRows) || (commitNanos > 0 && System.nanoTime() - lastCommit >= commitNanos))
+            commit(conn);
+    }
+
+    public void commit(Connection conn) throws SQLException, IOException {
+        if (!conn.getAutoCommit())
+            conn.commit();
+        lastKeys.putAll(pending);
+        pending.clear();
+        pendingRows = 0;
+        lastCommit = System.nanoTime();
+        commits++;
+        save();
+    }
+
+    public void complete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        MAPPER.writeValue(tmp, this);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.makslist.dbd;
+
+public interface KeyIndex {
+
+    static KeyIndex create(TableMeta table) {
+        if (Snapshot.isOffHeapIndex() && table.primaryKey != null)
+            return new OffHeapKeyIndex();
+        if (LongKeyIndex.fits(table))
+            return new LongKeyIndex(table.primaryKey.getPkIndices().length);
+        return new HashKeyIndex();
+    }
+
+    /**
+     * Position of the record with the given key, or -1.
+     */
+    int get(Snapshot.Key key);
+
+    /**
+     * Position of the record with the same key as the given record, which may belong to another snapshot.
+     */
+    default int get(Snapshot.Record record) {
+        return get(record.key());
+    }
+
+    /**
+     * Maps the key to the record position, replacing an earlier mapping of the same key.
+     */
+    void put(Snapshot.Key key, int position);
+
+    default void put(Snapshot.Record record, int position) {
+        put(record.key(), position);
+    }
+
+    void clear();
+
+    int size();
+
+}
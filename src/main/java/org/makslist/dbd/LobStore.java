@@ -0,0 +1,145 @@
+package org.makslist.dbd;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.sql.*;
+import java.util.*;
+
+public class LobStore {
+
+    public static final String DIGEST_PREFIX = "sha256:";
+    private static final String EXTENSION = ".lob";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public static LobStore digestOnly() {
+        return new LobStore(null);
+    }
+
+    public static boolean isDigest(String value) {
+        return value != null && value.startsWith(DIGEST_PREFIX);
+    }
+
+    private final File directory;
+    // Streams bound by the current thread; parallel apply workers share the reference's store.
+    private final ThreadLocal<List<Closeable>> openStreams = ThreadLocal.withInitial(ArrayList::new);
+
+    public LobStore(File directory) {
+        this.directory = directory;
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            throw new RuntimeException("Directory " + directory + " could not be created.");
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public String store(Clob clob) throws SQLException {
+        try (Reader reader = clob.getCharacterStream()) {
+            return store(out -> {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                char[] buffer = new char[BUFFER_SIZE / 2];
+                for (int read; (read = reader.read(buffer)) != -1; )
+                    writer.write(buffer, 0, read);
+                writer.flush();
+            });
+        } catch (IOException e) {
+            throw new SQLException("Storing CLOB failed: " + e.getMessage(), e);
+        } finally {
+            clob.free();
+        }
+    }
+
+    public String store(Blob blob) throws SQLException {
+        try (InputStream in = blob.getBinaryStream()) {
+            return store(out -> {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read; (read = in.read(buffer)) != -1; )
+                    out.write(buffer, 0, read);
+            });
+        } catch (IOException e) {
+            throw new SQLException("Storing BLOB failed: " + e.getMessage(), e);
+        } finally {
+            blob.free();
+        }
+    }
+
+    private String store(Content content) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        File tmp = directory != null ? File.createTempFile("lob", ".tmp", directory) : null;
+        try (OutputStream out = new DigestOutputStream(tmp != null ? new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE) : NULL_OUTPUT_STREAM, digest)) {
+            content.write(out);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+        if (tmp != null) {
+            File target = new File(directory, hex + EXTENSION);
+            if (target.exists())
+                Files.delete(tmp.toPath());
+            else
+                Files.move(tmp.toPath(), target.toPath());
+        }
+        return DIGEST_PREFIX + hex;
+    }
+
+    public Reader reader(String digest) throws SQLException {
+        Reader reader = new InputStreamReader(open(digest), StandardCharsets.UTF_8);
+        openStreams.get().add(reader);
+        return reader;
+    }
+
+    public InputStream stream(String digest) throws SQLException {
+        InputStream in = open(digest);
+        openStreams.get().add(in);
+        return in;
+    }
+
+    private InputStream open(String digest) throws SQLException {
+        if (directory == null)
+            throw new SQLException("No LOB directory to read " + digest + " from.");
+        File file = new File(directory, digest.substring(DIGEST_PREFIX.length()) + EXTENSION);
+        try {
+            return new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new SQLException("LOB file " + file + " is not readable: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the streams opened by the current thread.
+     */
+    public void closeStreams() {
+        List<Closeable> streams = openStreams.get();
+        for (Closeable stream : streams)
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        streams.clear();
+    }
+
+    private interface Content {
+        void write(OutputStream out) throws IOException;
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.makslist.dbd;
+
+import java.util.*;
+
+import static java.sql.Types.*;
+
+/**
+ * Open-addressing index for primary keys of up to four whole-number columns, packed into a single long.
+ * Keys that do not pack (null, non-canonical or out-of-range values) are kept in an overflow map.
+ */
+public class LongKeyIndex implements KeyIndex {
+
+    private static final int MAX_COLUMNS = 4;
+    // Never a packed key: a single column packs at most 18 digits, and the lowest value of a column is not packed.
+    private static final long NOT_PACKED = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    public static boolean fits(TableMeta table) {
+        if (table == null || table.primaryKey == null || table.primaryKey.getPkIndices() == null)
+            return false;
+        int[] pkIndices = table.primaryKey.getPkIndices();
+        if (pkIndices.length == 0 || pkIndices.length > MAX_COLUMNS)
+            return false;
+        for (int i : pkIndices)
+            if (!isWholeNumber(table.columns.get(i)))
+                return false;
+        return true;
+    }
+
+    static boolean isWholeNumber(TableMeta.Column column) {
+        switch (column.datatype) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                return true;
+            case NUMERIC:
+            case DECIMAL:
+                return column.decimalDigits == 0 && column.columnSize > 0 && column.columnSize <= 18;
+            default:
+                return false;
+        }
+    }
+
+    private final int bits;
+    private final HashKeyIndex overflow = new HashKeyIndex();
+
+    private long[] keys;
+    private int[] positions;
+    private int size;
+
+    public LongKeyIndex(int columnCount) {
+        this.bits = 64 / columnCount;
+        clear();
+    }
+
+    @Override
+    public int get(Snapshot.Key key) {
+        long packed = pack(key);
+        return packed != NOT_PACKED ? find(packed) : overflow.get(key);
+    }
+
+    @Override
+    public int get(Snapshot.Record record) {
+        long packed = pack(record);
+        return packed != NOT_PACKED ? find(packed) : overflow.get(record.key());
+    }
+
+    @Override
+    public void put(Snapshot.Key key, int position) {
+        long packed = pack(key);
+        if (packed != NOT_PACKED)
+            insert(packed, position);
+        else
+            overflow.put(key, position);
+    }
+
+    @Override
+    public void put(Snapshot.Record record, int position) {
+        long packed = pack(record);
+        if (packed != NOT_PACKED)
+            insert(packed, position);
+        else
+            overflow.put(record.key(), position);
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        size = 0;
+        overflow.clear();
+    }
+
+    @Override
+    public int size() {
+        return size + overflow.size();
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); positions[slot] != 0; slot = (slot + 1) & mask)
+            if (keys[slot] == key)
+                return positions[slot] - 1;
+        return -1;
+    }
+
+    private void insert(long key, int position) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        for (; positions[slot] != 0; slot = (slot + 1) & mask)
+            if (keys[slot] == key) {
+                positions[slot] = position + 1;
+                return;
+            }
+        keys[slot] = key;
+        positions[slot] = position + 1;
+        if (++size > keys.length / 4 * 3)
+            resize();
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldPositions = positions;
+        keys = new long[oldKeys.length * 2];
+        positions = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldPositions[i] != 0) {
+                int slot = slot(oldKeys[i], mask);
+                while (positions[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                positions[slot] = oldPositions[i];
+            }
+    }
+
+    private static int slot(long key, int mask) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private long pack(Snapshot.Key key) {
+        if (key == null)
+            return NOT_PACKED;
+        String[] values = key.values();
+        long packed = 0;
+        for (int i = 0; i < values.length; i++) {
+            long column = pack(values[i], i);
+            if (column == NOT_PACKED)
+                return NOT_PACKED;
+            packed |= column;
+        }
+        return packed;
+    }
+
+    private long pack(Snapshot.Record record) {
+        int count = record.keyColumnCount();
+        long packed = 0;
+        for (int i = 0; i < count; i++) {
+            long column = pack(record.keyColumn(i), i);
+            if (column == NOT_PACKED)
+                return NOT_PACKED;
+            packed |= column;
+        }
+        return packed;
+    }
+
+    // Only canonical decimal strings pack, so "7" and "007" stay different keys as they are in the snapshot.
+    // Returns the value shifted to the bits of the column.
+    private long pack(String value, int column) {
+        if (value == null || value.isEmpty() || value.length() > 19)
+            return NOT_PACKED;
+        boolean negative = value.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        int length = value.length() - start;
+        if (length == 0 || length > 18 || (value.charAt(start) == '0' && (length > 1 || negative)))
+            return NOT_PACKED;
+        long number = 0;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return NOT_PACKED;
+            number = number * 10 + (c - '0');
+        }
+        if (negative)
+            number = -number;
+
+        if (bits == 64)
+            return number;
+        long limit = 1L << (bits - 1);
+        if (number <= -limit || number >= limit)
+            return NOT_PACKED;
+        return (number & ((1L << bits) - 1)) << (column * bits);
+    }
+
+}
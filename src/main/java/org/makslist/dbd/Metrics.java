@@ -0,0 +1,152 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.annotation.*;
+
+import javax.management.*;
+import java.io.*;
+import java.lang.management.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class Metrics {
+
+    public static final String DOMAIN = "org.makslist.dbd";
+
+    private static final Metrics METRICS = new Metrics();
+
+    public static Metrics getInstance() {
+        return METRICS;
+    }
+
+    private final Instant started = Instant.now();
+    private final Map<String, Table> tables = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public Table table(String name) {
+        return tables.computeIfAbsent(name.toLowerCase(), Metrics::register);
+    }
+
+    public Collection<Table> tables() {
+        return tables.values();
+    }
+
+    private static Table register(String name) {
+        Table table = new Table(name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(table, new ObjectName(DOMAIN + ":type=Table,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            OutPut.getInstance().debug("Metrics of " + name + " not registered: " + e.getMessage());
+        }
+        return table;
+    }
+
+    public void report(File file) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("started", started.toString());
+        report.put("elapsedMillis", Duration.between(started, Instant.now()).toMillis());
+        report.put("tables", tables.values());
+        Snapshot.OBJECT_WRITER.writeValue(file, report);
+    }
+
+    public enum Phase {
+        METADATA, QUERY, DECODE, SERIALIZE, DELTA, INSERT, UPDATE, DELETE
+    }
+
+    public interface TableMXBean {
+
+        String getName();
+
+        long getRows();
+
+        long getBytes();
+
+        long getRoundTrips();
+
+        long getRowsPerSecond();
+
+        long getBytesPerSecond();
+
+        Map<String, Long> getPhaseMillis();
+
+    }
+
+    @JsonPropertyOrder({"name", "rows", "bytes", "roundTrips", "rowsPerSecond", "bytesPerSecond", "phaseMillis"})
+    public static class Table implements TableMXBean {
+
+        private final String name;
+        private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+
+        Table(String name) {
+            this.name = name;
+            for (int i = 0; i < nanos.length; i++)
+                nanos[i] = new LongAdder();
+        }
+
+        public void time(Phase phase, long nanos) {
+            this.nanos[phase.ordinal()].add(nanos);
+        }
+
+        public void since(Phase phase, long start) {
+            time(phase, System.nanoTime() - start);
+        }
+
+        public void rows(long rows, long bytes) {
+            this.rows.add(rows);
+            this.bytes.add(bytes);
+        }
+
+        public void roundTrips(long roundTrips) {
+            this.roundTrips.add(roundTrips);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        @Override
+        public long getRoundTrips() {
+            return roundTrips.sum();
+        }
+
+        // Throughput of reading, i.e. rows and bytes over the time spent in query execution and decoding.
+        @Override
+        public long getRowsPerSecond() {
+            long readNanos = nanos[Phase.QUERY.ordinal()].sum() + nanos[Phase.DECODE.ordinal()].sum();
+            return readNanos > 0 ? getRows() * 1_000_000_000L / readNanos : 0;
+        }
+
+        @Override
+        public long getBytesPerSecond() {
+            long readNanos = nanos[Phase.QUERY.ordinal()].sum() + nanos[Phase.DECODE.ordinal()].sum();
+            return readNanos > 0 ? getBytes() * 1_000_000_000L / readNanos : 0;
+        }
+
+        @Override
+        public Map<String, Long> getPhaseMillis() {
+            Map<String, Long> millis = new LinkedHashMap<>();
+            for (Phase phase : Phase.values())
+                millis.put(phase.name().toLowerCase(), TimeUnit.NANOSECONDS.toMillis(nanos[phase.ordinal()].sum()));
+            return millis;
+        }
+
+    }
+
+}
@@ -0,0 +1,191 @@
+package org.makslist.dbd;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Open-addressing key index kept in direct buffers outside the Java heap.
+ * Keys are serialized into an append-only arena; the slot table holds hash and record position,
+ * and a table per record position points back to its key bytes.
+ */
+public class OffHeapKeyIndex implements KeyIndex {
+
+    private static final int SLOT_BYTES = 8;
+    private static final int REF_BYTES = 8;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final int MAX_POSITION = (1 << 28) - 1;
+    private static final int INITIAL_CHUNK = 64 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024 * 1024;
+
+    private ByteBuffer slots;
+    private ByteBuffer refs;
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private int capacity;
+    private int size;
+
+    // Serialized key of the current lookup, per thread so that concurrent lookups do not share it.
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    public OffHeapKeyIndex() {
+        clear();
+    }
+
+    @Override
+    public int get(Snapshot.Key key) {
+        if (key == null)
+            return -1;
+        Scratch scratch = serialize(key);
+        int slot = find(hash(scratch), scratch);
+        return slot >= 0 ? slots.getInt(slot * SLOT_BYTES + 4) - 1 : -1;
+    }
+
+    @Override
+    public void put(Snapshot.Key key, int position) {
+        if (position > MAX_POSITION)
+            throw new IllegalStateException("Off-heap key index is limited to " + MAX_POSITION + " rows.");
+        ensureRefs(position);
+
+        Scratch scratch = serialize(key);
+        int hash = hash(scratch);
+        int slot = find(hash, scratch);
+        if (slot >= 0) {
+            int previous = slots.getInt(slot * SLOT_BYTES + 4) - 1;
+            refs.putLong(position * REF_BYTES, refs.getLong(previous * REF_BYTES));
+            slots.putInt(slot * SLOT_BYTES + 4, position + 1);
+            return;
+        }
+
+        refs.putLong(position * REF_BYTES, append(scratch));
+        slot = -slot - 1;
+        slots.putInt(slot * SLOT_BYTES, hash);
+        slots.putInt(slot * SLOT_BYTES + 4, position + 1);
+        if (++size > capacity / 4 * 3)
+            resize();
+    }
+
+    @Override
+    public void clear() {
+        capacity = INITIAL_CAPACITY;
+        size = 0;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        refs = ByteBuffer.allocateDirect(INITIAL_CAPACITY * REF_BYTES).order(ByteOrder.nativeOrder());
+        arena.clear();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Slot holding the serialized key, or -(free slot) - 1.
+    private int find(int hash, Scratch scratch) {
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slots.getInt(slot * SLOT_BYTES + 4) - 1;
+            if (position < 0)
+                return -slot - 1;
+            if (slots.getInt(slot * SLOT_BYTES) == hash && matches(refs.getLong(position * REF_BYTES), scratch))
+                return slot;
+        }
+    }
+
+    private boolean matches(long ref, Scratch scratch) {
+        ByteBuffer chunk = arena.get((int) (ref >>> 32));
+        int offset = (int) ref;
+        if (chunk.getInt(offset) != scratch.length)
+            return false;
+        offset += 4;
+        for (int i = 0; i < scratch.length; i++)
+            if (chunk.get(offset + i) != scratch.bytes[i])
+                return false;
+        return true;
+    }
+
+    private long append(Scratch scratch) {
+        int length = scratch.length;
+        ByteBuffer chunk = arena.isEmpty() ? null : arena.get(arena.size() - 1);
+        if (chunk == null || chunk.remaining() < length + 4) {
+            int chunkSize = chunk == null ? INITIAL_CHUNK : Math.min(chunk.capacity() * 2, MAX_CHUNK);
+            chunk = ByteBuffer.allocateDirect(Math.max(chunkSize, length + 4)).order(ByteOrder.nativeOrder());
+            arena.add(chunk);
+        }
+        long ref = ((long) (arena.size() - 1) << 32) | chunk.position();
+        chunk.putInt(length);
+        chunk.put(scratch.bytes, 0, length);
+        return ref;
+    }
+
+    private void resize() {
+        if (capacity >= MAX_CAPACITY)
+            throw new IllegalStateException("Off-heap key index is full.");
+        int newCapacity = capacity * 2;
+        int mask = newCapacity - 1;
+        ByteBuffer newSlots = ByteBuffer.allocateDirect(newCapacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = slots.getInt(slot * SLOT_BYTES + 4);
+            if (position == 0)
+                continue;
+            int hash = slots.getInt(slot * SLOT_BYTES);
+            int target = hash & mask;
+            while (newSlots.getInt(target * SLOT_BYTES + 4) != 0)
+                target = (target + 1) & mask;
+            newSlots.putInt(target * SLOT_BYTES, hash);
+            newSlots.putInt(target * SLOT_BYTES + 4, position);
+        }
+        slots = newSlots;
+        capacity = newCapacity;
+    }
+
+    private void ensureRefs(int position) {
+        if ((long) position * REF_BYTES < refs.capacity())
+            return;
+        long needed = Math.max((long) refs.capacity() * 2, ((long) position + 1) * REF_BYTES);
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(needed, (long) (MAX_POSITION + 1) * REF_BYTES)).order(ByteOrder.nativeOrder());
+        refs.clear();
+        grown.put(refs);
+        refs = grown;
+    }
+
+    // Columns as length-prefixed UTF-16 chars, -1 for null, into the scratch buffer of the thread.
+    private static Scratch serialize(Snapshot.Key key) {
+        Scratch buffer = SCRATCH.get();
+        byte[] scratch = buffer.bytes;
+        int length = 0;
+        for (String value : key.values()) {
+            int needed = length + 4 + (value != null ? value.length() * 2 : 0);
+            if (needed > scratch.length)
+                scratch = buffer.bytes = Arrays.copyOf(scratch, Math.max(needed, scratch.length * 2));
+            int chars = value != null ? value.length() : -1;
+            scratch[length++] = (byte) (chars >>> 24);
+            scratch[length++] = (byte) (chars >>> 16);
+            scratch[length++] = (byte) (chars >>> 8);
+            scratch[length++] = (byte) chars;
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                scratch[length++] = (byte) (c >>> 8);
+                scratch[length++] = (byte) c;
+            }
+        }
+        buffer.length = length;
+        return buffer;
+    }
+
+    private static int hash(Scratch scratch) {
+        int h = scratch.length;
+        for (int i = 0; i < scratch.length; i++)
+            h = 31 * h + scratch.bytes[i];
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static class Scratch {
+        byte[] bytes = new byte[256];
+        int length;
+    }
+
+}
@@ -1,15 +1,22 @@
 package org.makslist.dbd;
 
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 public class OutPut {
 
     private static final Scanner SCANNER = new Scanner(System.in);
+    private static final int BUFFER_SIZE = 8192;
     private static OutPut output;
 
     public static OutPut getInstance(Level level) {
         if (OutPut.output == null) {
-            OutPut.output = new OutPut(level);
+            OutPut.output = new OutPut(level != null ? level : Level.USER);
         }
         return OutPut.output;
     }
@@ -19,38 +26,149 @@ public class OutPut {
     }
 
     private final Level level;
+    private final BlockingQueue<Message> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private final Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024);
+    private final Writer err = new OutputStreamWriter(System.err);
+    private volatile Writer file;
+    private final Thread writer;
 
     private OutPut(Level level) {
         this.level = level;
+        this.writer = new Thread(this::drain, "output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "output-flush"));
+    }
+
+    public void setFile(File logFile) throws IOException {
+        flush();
+        Writer previous = file;
+        file = logFile != null ? Files.newBufferedWriter(logFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND) : null;
+        if (previous != null)
+            previous.close();
+    }
+
+    public boolean isInfo() {
+        return level.ordinal() >= Level.INFO.ordinal();
+    }
+
+    public boolean isDebug() {
+        return level.ordinal() >= Level.DEBUG.ordinal();
     }
 
     public void user(String message) {
-        System.out.print(message);
+        enqueue(Level.USER, message, false);
     }
 
     public void userln(String message) {
-        System.out.println(message);
+        enqueue(Level.USER, message, true);
     }
 
     public boolean question(String message, String yesOption, String noOption) {
-        System.out.print(message + " [" + yesOption + "/" + noOption + "]");
+        enqueue(Level.QUESTION, message + " [" + yesOption + "/" + noOption + "]", false);
+        flush();
         return yesOption.equalsIgnoreCase(SCANNER.nextLine());
     }
 
     public void error(String message) {
-        if (level.ordinal() >= Level.ERROR.ordinal()) System.err.println(message);
+        if (level.ordinal() >= Level.ERROR.ordinal()) enqueue(Level.ERROR, message, true);
     }
 
     public void info(String message) {
-        if (level.ordinal() >= Level.INFO.ordinal()) System.out.println(message);
+        if (isInfo()) enqueue(Level.INFO, message, true);
+    }
+
+    public void info(Supplier<String> message) {
+        if (isInfo()) enqueue(Level.INFO, message.get(), true);
     }
 
     public void debug(String message) {
-        if (level.ordinal() >= Level.DEBUG.ordinal()) System.out.println(message);
+        if (isDebug()) enqueue(Level.DEBUG, message, true);
+    }
+
+    public void debug(Supplier<String> message) {
+        if (isDebug()) enqueue(Level.DEBUG, message.get(), true);
+    }
+
+    // Blocks until everything logged so far has reached the console and the log file.
+    public void flush() {
+        if (Thread.currentThread() == writer)
+            return;
+        Message flush = new Message(null, null, false);
+        flush.written = new CountDownLatch(1);
+        try {
+            buffer.put(flush);
+            flush.written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Level level, String message, boolean newLine) {
+        try {
+            buffer.put(new Message(level, message, newLine));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Message> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(buffer.take());
+                buffer.drainTo(batch);
+                for (Message message : batch)
+                    write(message);
+                out.flush();
+                err.flush();
+                if (file != null)
+                    file.flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException ignored) {
+                // nowhere left to report a failing console
+            } finally {
+                for (Message message : batch)
+                    if (message.written != null)
+                        message.written.countDown();
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(Message message) throws IOException {
+        if (message.level == null)
+            return;
+        String text = String.valueOf(message.text);
+        Writer console = message.level == Level.ERROR ? err : out;
+        if (message.level == Level.ERROR)
+            out.flush();
+        console.write(text);
+        if (message.newLine)
+            console.write(System.lineSeparator());
+        if (file != null)
+            file.write(Instant.ofEpochMilli(message.time) + " " + message.level + " " + text + System.lineSeparator());
     }
 
     public enum Level {
         SILENT, ERROR, QUESTION, USER, INFO, DEBUG
     }
 
-}
\ No newline at end of file
+    private static class Message {
+
+        final Level level;
+        final String text;
+        final boolean newLine;
+        final long time = System.currentTimeMillis();
+        CountDownLatch written;
+
+        Message(Level level, String text, boolean newLine) {
+            this.level = level;
+            this.text = text;
+            this.newLine = newLine;
+        }
+
+    }
+
+}
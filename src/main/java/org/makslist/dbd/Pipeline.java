@@ -0,0 +1,84 @@
+package org.makslist.dbd;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+public class Pipeline<I, O> implements AutoCloseable {
+
+    private static final Future<?> END = CompletableFuture.completedFuture(null);
+
+    private final Stage<I, O> decoder;
+    private final Sink<O> writer;
+
+    private final ExecutorService decoders;
+    private final BlockingQueue<Future<?>> queue;
+    private final Thread writerThread;
+    private volatile Exception failure;
+
+    public Pipeline(int decoderCount, Stage<I, O> decoder, Sink<O> writer) {
+        this.decoder = decoder;
+        this.writer = writer;
+        this.decoders = Executors.newFixedThreadPool(decoderCount);
+        this.queue = new ArrayBlockingQueue<>(decoderCount * 2);
+        this.writerThread = new Thread(this::drain, "pipeline-writer");
+        this.writerThread.start();
+    }
+
+    public boolean put(I block) throws InterruptedException {
+        if (failure != null)
+            return false;
+        queue.put(decoders.submit(() -> decoder.apply(block)));
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        try {
+            for (Future<?> next = queue.take(); next != END; next = queue.take()) {
+                if (failure != null)
+                    continue;
+                try {
+                    writer.accept((O) next.get());
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Waits for the writer to take all blocks and rethrows the first failure of a decoder or the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+            throw new InterruptedIOException("Pipeline interrupted");
+        } finally {
+            decoders.shutdownNow();
+        }
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure != null)
+            throw new IOException(failure.getMessage(), failure);
+    }
+
+    public interface Stage<I, O> {
+        O apply(I in) throws Exception;
+    }
+
+    public interface Sink<T> {
+        void accept(T t) throws Exception;
+    }
+
+}
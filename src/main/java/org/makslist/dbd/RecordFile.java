@@ -0,0 +1,101 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.core.io.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Temporary file of records, one JSON array of column values per line.
+ */
+public class RecordFile {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    public RecordFile(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Appender append() throws IOException {
+        return new Appender(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+    }
+
+    public Cursor read() throws IOException {
+        return new Cursor(FACTORY.createParser(new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE)));
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    public static class Appender implements Closeable {
+
+        private final JsonGenerator generator;
+        private long count;
+
+        private Appender(OutputStream out) throws IOException {
+            this.generator = FACTORY.createGenerator(out);
+            this.generator.setRootValueSeparator(new SerializedString(""));
+        }
+
+        public void write(String[] values) throws IOException {
+            generator.writeStartArray();
+            for (String value : values)
+                generator.writeString(value);
+            generator.writeEndArray();
+            generator.writeRaw('\n');
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+
+    }
+
+    public static class Cursor implements Closeable {
+
+        private final JsonParser parser;
+        private final List<String> values = new ArrayList<>();
+
+        private Cursor(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Next record in file order, or null after the last one.
+         */
+        public String[] next() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null)
+                return null;
+            if (token != JsonToken.START_ARRAY)
+                throw new IOException("Unexpected " + token + " in record file.");
+            values.clear();
+            for (token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken())
+                values.add(token == JsonToken.VALUE_NULL ? null : parser.getText());
+            return values.toArray(new String[0]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+package org.makslist.dbd;
+
+import java.math.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.sql.*;
+import java.text.*;
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+import java.util.stream.*;
+
+import static java.sql.Types.*;
+
+/**
+ * MD5 over the compared non-key columns of a row, computed alike by the database and from snapshot records.
+ * Every value is rendered as text, null as CHR(31), and followed by CHR(30). The database renders dates,
+ * times and decimals the way the snapshot does, so equal rows hash equal; where a rendering differs the
+ * row only counts as a mismatch and is compared in full.
+ */
+public class RowHash {
+
+    static final char SEPARATOR = 30;
+    static final char NULL_MARKER = 31;
+
+    // Oracle concatenates into a VARCHAR2, which fails beyond 4000 bytes (ORA-01489).
+    static final int ORACLE_MAX_TEXT = 4000;
+    private static final int NUMBER_TEXT = 64;
+
+    private static final ThreadLocal<SimpleDateFormat> SNAPSHOT_TIMESTAMP = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SS"));
+    private static final ThreadLocal<SimpleDateFormat> MILLIS_TIMESTAMP = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"));
+    private static final DateTimeFormatter SECONDS_TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private enum Vendor {
+        ORACLE, POSTGRES, MYSQL, H2
+    }
+
+    /**
+     * The hash for the database, or null if the database or one of the compared column types is not supported,
+     * or if on Oracle the compared columns may be too wide to concatenate.
+     */
+    public static RowHash of(String productName, TableMeta table, boolean[] useColumn) {
+        Vendor vendor;
+        if ("Oracle".equalsIgnoreCase(productName))
+            vendor = Vendor.ORACLE;
+        else if ("PostgreSQL".equalsIgnoreCase(productName))
+            vendor = Vendor.POSTGRES;
+        else if ("MySQL".equalsIgnoreCase(productName))
+            vendor = Vendor.MYSQL;
+        else if ("H2".equalsIgnoreCase(productName))
+            vendor = Vendor.H2;
+        else
+            return null;
+
+        if (table.primaryKey == null)
+            return null;
+        int[] pkIndices = table.primaryKey.getPkIndices();
+        int[] columns = IntStream.range(0, table.columns.size())
+                .filter(i -> useColumn == null || useColumn[i])
+                .filter(i -> Arrays.stream(pkIndices).noneMatch(pk -> pk == i))
+                .toArray();
+        for (int i : columns)
+            if (!supports(table.columns.get(i).datatype))
+                return null;
+        if (vendor == Vendor.ORACLE && Arrays.stream(columns).map(i -> textWidth(table.columns.get(i)) + 1).sum() > ORACLE_MAX_TEXT)
+            return null;
+        return new RowHash(vendor, table, columns);
+    }
+
+    private static boolean supports(int datatype) {
+        switch (datatype) {
+            case CLOB:
+            case NCLOB:
+            case BLOB:
+            case BINARY:
+            case VARBINARY:
+            case LONGVARBINARY:
+            case SQLXML:
+            case OTHER:
+            case JAVA_OBJECT:
+            case ARRAY:
+            case STRUCT:
+            case DISTINCT:
+            case REF:
+            case ROWID:
+            case TIME_WITH_TIMEZONE:
+            case TIMESTAMP_WITH_TIMEZONE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // Longest text of the column as rendered by text().
+    private static int textWidth(TableMeta.Column column) {
+        switch (column.datatype) {
+            case DATE:
+                return 10;
+            case TIMESTAMP:
+                return 23;
+            case TIME:
+                return 8;
+            case BOOLEAN:
+            case BIT:
+                return 5;
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case NUMERIC:
+            case DECIMAL:
+            case FLOAT:
+            case REAL:
+            case DOUBLE:
+                return NUMBER_TEXT;
+            default:
+                return column.columnSize > 0 ? Math.min(column.columnSize, ORACLE_MAX_TEXT) : ORACLE_MAX_TEXT;
+        }
+    }
+
+    private final Vendor vendor;
+    private final TableMeta table;
+    private final int[] columns;
+
+    private RowHash(Vendor vendor, TableMeta table, int[] columns) {
+        this.vendor = vendor;
+        this.table = table;
+        this.columns = columns;
+    }
+
+    /**
+     * Select expression computing the hash in the database.
+     */
+    public String sql() {
+        String separator = vendor == Vendor.MYSQL || vendor == Vendor.H2 ? "char(30)" : "chr(30)";
+        String nullMarker = vendor == Vendor.MYSQL || vendor == Vendor.H2 ? "char(31)" : "chr(31)";
+        List<String> values = new ArrayList<>();
+        for (int i : columns) {
+            values.add("coalesce(" + text(table.columns.get(i)) + ", " + nullMarker + ")");
+            values.add(separator);
+        }
+        if (values.isEmpty())
+            values.add("''");
+        switch (vendor) {
+            case ORACLE:
+                return "standard_hash(" + String.join(" || ", values) + ", 'MD5')";
+            case POSTGRES:
+                return "md5(" + String.join(" || ", values) + ")";
+            case MYSQL:
+                return "md5(concat(" + String.join(", ", values) + "))";
+            default:
+                return "hash('MD5', " + String.join(" || ", values) + ")";
+        }
+    }
+
+    /**
+     * The hash as read from the column of the result set, in lower case hex.
+     */
+    public String read(ResultSet rs, int index) throws SQLException {
+        if (vendor == Vendor.ORACLE || vendor == Vendor.H2) {
+            byte[] hash = rs.getBytes(index);
+            return hash != null ? hex(hash) : null;
+        }
+        String hash = rs.getString(index);
+        return hash != null ? hash.toLowerCase() : null;
+    }
+
+    /**
+     * The hash of a snapshot record, in lower case hex.
+     */
+    public String hash(Snapshot.Record record) {
+        StringBuilder text = new StringBuilder();
+        for (int i : columns) {
+            String value = record.column(i);
+            text.append(value != null ? render(table.columns.get(i), value) : String.valueOf(NULL_MARKER)).append(SEPARATOR);
+        }
+        try {
+            return hex(MessageDigest.getInstance("MD5").digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Column as text in the database, matching render().
+    private String text(TableMeta.Column column) {
+        String c = column.name;
+        switch (column.datatype) {
+            case DATE:
+            case TIMESTAMP:
+                boolean date = column.datatype == DATE;
+                switch (vendor) {
+                    case ORACLE:
+                        return date ? "to_char(" + c + ", 'YYYY-MM-DD')" : "to_char(cast(" + c + " as timestamp), 'YYYY-MM-DD HH24:MI:SS.FF3')";
+                    case POSTGRES:
+                        return "to_char(" + c + ", '" + (date ? "YYYY-MM-DD" : "YYYY-MM-DD HH24:MI:SS.MS") + "')";
+                    case MYSQL:
+                        return date ? "date_format(" + c + ", '%Y-%m-%d')" : "left(date_format(" + c + ", '%Y-%m-%d %H:%i:%s.%f'), 23)";
+                    default:
+                        return "formatdatetime(" + c + ", '" + (date ? "yyyy-MM-dd" : "yyyy-MM-dd HH:mm:ss.SSS") + "')";
+                }
+            case TIME:
+                switch (vendor) {
+                    case ORACLE:
+                    case POSTGRES:
+                        return "to_char(" + c + ", 'HH24:MI:SS')";
+                    case MYSQL:
+                        return "time_format(" + c + ", '%H:%i:%s')";
+                    default:
+                        return "formatdatetime(" + c + ", 'HH:mm:ss')";
+                }
+            case NUMERIC:
+            case DECIMAL:
+                return vendor == Vendor.ORACLE ? "to_char(" + c + ", 'TM9')" : cast(c);
+            case BOOLEAN:
+            case BIT:
+                boolean numeric = vendor == Vendor.ORACLE || vendor == Vendor.MYSQL;
+                return "case when " + (numeric ? c + " <> 0" : c) + " then 'true' when " + (numeric ? c + " = 0" : "not " + c) + " then 'false' end";
+            default:
+                return cast(c);
+        }
+    }
+
+    private String cast(String column) {
+        switch (vendor) {
+            case ORACLE:
+                return "to_char(" + column + ")";
+            case POSTGRES:
+                return column + "::text";
+            case MYSQL:
+                return "cast(" + column + " as char)";
+            default:
+                return "cast(" + column + " as varchar)";
+        }
+    }
+
+    // Snapshot value in the text form of the database, see text().
+    private String render(TableMeta.Column column, String value) {
+        try {
+            switch (column.datatype) {
+                case TIMESTAMP:
+                    return MILLIS_TIMESTAMP.get().format(SNAPSHOT_TIMESTAMP.get().parse(value));
+                case TIME:
+                    return LocalTime.parse(value).format(SECONDS_TIME);
+                case NUMERIC:
+                case DECIMAL:
+                    BigDecimal number = new BigDecimal(value);
+                    if (vendor == Vendor.ORACLE) {
+                        String plain = number.stripTrailingZeros().toPlainString();
+                        return plain.startsWith("0.") ? plain.substring(1) : plain.startsWith("-0.") ? "-" + plain.substring(2) : plain;
+                    }
+                    return column.decimalDigits > 0 ? number.setScale(column.decimalDigits, RoundingMode.UNNECESSARY).toPlainString() : value;
+                default:
+                    return value;
+            }
+        } catch (ParseException | DateTimeParseException | ArithmeticException | NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+
+}
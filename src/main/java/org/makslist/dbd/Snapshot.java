@@ -3,47 +3,64 @@ package org.makslist.dbd;
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.core.util.*;
 import com.fasterxml.jackson.databind.*;
-import com.fasterxml.jackson.databind.node.*;
 
 import java.io.*;
-import java.math.*;
 import java.nio.file.*;
-import java.text.*;
 import java.util.*;
 import java.util.stream.*;
 
-import static java.sql.Types.*;
-
 public class Snapshot {
 
     public static final String TABLE = "table";
     public static final String WHERE = "where";
     public static final String RECORDS = "records";
+    public static final String TRACK_COLUMN = "trackColumn";
+    public static final String HIGH_WATER_MARK = "highWaterMark";
+    public static final String LOBS = "lobs";
 
-    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    private static final ObjectWriter OBJECT_WRITER;
-
-    private static final DecimalFormat DECIMAL_FORMAT;
+    static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    static final ObjectWriter OBJECT_WRITER;
 
     static {
         DefaultPrettyPrinter prettyPrinter = new DefaultPrettyPrinter();
         prettyPrinter.indentArraysWith(DefaultIndenter.SYSTEM_LINEFEED_INSTANCE);
         OBJECT_WRITER = MAPPER.writer(prettyPrinter);
+    }
+
+    private static volatile boolean offHeapIndex;
 
-        DECIMAL_FORMAT = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-        DECIMAL_FORMAT.setMaximumFractionDigits(340);
+    public static void useOffHeapIndex(boolean offHeap) {
+        offHeapIndex = offHeap;
+    }
+
+    public static boolean isOffHeapIndex() {
+        return offHeapIndex;
     }
 
     public static Snapshot read(File file) throws IOException {
         ObjectReader reader = MAPPER.reader();
-        return reader.readValue(file, Snapshot.class);
+        Snapshot snapshot = reader.readValue(file, Snapshot.class);
+        snapshot.lobStore = lobStore(file, snapshot.lobPath);
+        return snapshot;
+    }
+
+    static LobStore lobStore(File file, String lobPath) {
+        if (lobPath == null)
+            return null;
+        File lobs = new File(lobPath);
+        return new LobStore(lobs.isAbsolute() ? lobs : new File(file.getAbsoluteFile().getParentFile(), lobPath));
     }
 
     private TableMeta table;
 
     private String where;
+    private String trackColumn;
+    private String highWaterMark;
+    private String lobPath;
+    private LobStore lobStore;
     private List<Record> records = new ArrayList<>();
-    private final Map<Key, Record> index = new HashMap<>();
+    private KeyIndex index;
+    private StringDictionary[] dictionaries;
 
     public Snapshot() {
     }
@@ -70,11 +87,38 @@ public class Snapshot {
     }
 
     public boolean containedInIndex(Key key) {
-        return index.containsKey(key);
+        return index().get(key) >= 0;
+    }
+
+    int position(Key key) {
+        return index().get(key);
     }
 
     public Record getRecord(Key key) {
-        return index.get(key);
+        int position = index().get(key);
+        return position >= 0 ? records.get(position) : null;
+    }
+
+    private Record matching(Record other) {
+        int position = index().get(other);
+        return position >= 0 ? records.get(position) : null;
+    }
+
+    private String[] dedup(String[] record) {
+        if (dictionaries == null) {
+            dictionaries = new StringDictionary[record.length];
+            for (int i = 0; i < dictionaries.length; i++)
+                dictionaries[i] = new StringDictionary();
+        }
+        for (int i = 0; i < record.length && i < dictionaries.length; i++)
+            record[i] = dictionaries[i].dedup(record[i]);
+        return record;
+    }
+
+    private KeyIndex index() {
+        if (index == null)
+            index = KeyIndex.create(table);
+        return index;
     }
 
     public String getWhere() {
@@ -86,6 +130,39 @@ public class Snapshot {
         this.where = where;
     }
 
+    public String getTrackColumn() {
+        return trackColumn;
+    }
+
+    @JsonProperty(TRACK_COLUMN)
+    public void setTrackColumn(String trackColumn) {
+        this.trackColumn = trackColumn;
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    @JsonProperty(HIGH_WATER_MARK)
+    public void setHighWaterMark(String highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    @JsonIgnore
+    public LobStore getLobStore() {
+        return lobStore;
+    }
+
+    @JsonIgnore
+    public void setLobStore(LobStore lobStore) {
+        this.lobStore = lobStore;
+    }
+
+    @JsonProperty(LOBS)
+    public void setLobs(String lobPath) {
+        this.lobPath = lobPath;
+    }
+
     public Stream<String> pkColumns() {
         return table.primaryKey.columnNames.stream();
     }
@@ -100,11 +177,13 @@ public class Snapshot {
 
     @JsonProperty(RECORDS)
     public void setRecords(Map<String, String>[] columns) {
-        this.records = new ArrayList<>();
+        this.records = new ArrayList<>(columns.length);
+        index().clear();
         Arrays.asList(columns).forEach(r -> {
-            Record e = new Record(this, r.values().toArray(new String[0]));
+            Record e = new Record(this, dedup(r.values().toArray(new String[0])));
             records.add(e);
-            index.put(e.key(), e);
+            if (table.primaryKey != null)
+                index.put(e, records.size() - 1);
         });
     }
 
@@ -112,11 +191,55 @@ public class Snapshot {
         if (table.columns.size() != record.length)
             throw new RuntimeException("Column count is different.");
 
-        Record rec = new Record(this, record);
+        Record rec = new Record(this, dedup(record));
         records.add(rec);
-        Key key = rec.key();
-        if (key != null)
-            index.put(key, rec);
+        if (table.primaryKey != null)
+            index().put(rec, records.size() - 1);
+    }
+
+    public void addKey(Key key) {
+        String[] record = new String[table.columns.size()];
+        String[] values = key.columns().toArray(String[]::new);
+        int[] pkIndices = table.primaryKey.getPkIndices();
+        for (int i = 0; i < pkIndices.length; i++)
+            record[pkIndices[i]] = values[i];
+        addRecord(record);
+    }
+
+    public void merge(Snapshot changes) {
+        for (Record change : changes.records) {
+            Record rec = new Record(this, dedup(change.columns));
+            int position = index().get(rec);
+            if (position < 0) {
+                records.add(rec);
+                index.put(rec, records.size() - 1);
+            } else
+                records.set(position, rec);
+        }
+        if (changes.highWaterMark != null) {
+            trackColumn = changes.trackColumn;
+            highWaterMark = changes.highWaterMark;
+        }
+    }
+
+    public int retain(Set<Key> keys) {
+        int count = records.size();
+        records.removeIf(r -> !keys.contains(r.key()));
+        index().clear();
+        if (table.primaryKey != null)
+            for (int i = 0; i < records.size(); i++)
+                index.put(records.get(i), i);
+        return count - records.size();
+    }
+
+    public int remove(Set<Key> keys) {
+        int count = records.size();
+        records.removeIf(r -> keys.contains(r.key()));
+        index().clear();
+        if (table.primaryKey != null)
+            for (int i = 0; i < records.size(); i++)
+                index.put(records.get(i), i);
+        return count - records.size();
     }
 
     public boolean isEmpty() {
@@ -124,22 +247,35 @@ public class Snapshot {
     }
 
     public ChangeSet delta(Snapshot target, List<String> ignoreColumns) {
+        long start = System.nanoTime();
         if (!table.name.equalsIgnoreCase(target.table.name))
             throw new RuntimeException("The tables have to have the same name.");
         if (!table.columns.equals(target.table.columns)) {
-            System.out.println("   The columns names and positions have to be identical.");
-            System.out.println("   Reference order: " + table.columns.stream().map(c -> c.name).collect(Collectors.joining(", ")));
-            System.out.println("   Found: " + target.table.columns.stream().map(c -> c.name).collect(Collectors.joining(", ")));
+            OutPut output = OutPut.getInstance();
+            output.userln("   The columns names and positions have to be identical.");
+            output.userln("   Reference order: " + table.columns.stream().map(c -> c.name).collect(Collectors.joining(", ")));
+            output.userln("   Found: " + target.table.columns.stream().map(c -> c.name).collect(Collectors.joining(", ")));
         }
 
-        List<Snapshot.Key> deleteKeys = target.keys().filter(r -> !containedInIndex(r)).collect(Collectors.toList());
         boolean[] useColumn = useColumns(ignoreColumns);
-        List<Snapshot.Key> updateKeys = keys().filter(target::containedInIndex).filter(key -> !getRecord(key).equals(target.getRecord(key), useColumn)).collect(Collectors.toList());
-        List<Snapshot.Key> insertKeys = keys().filter(r -> !target.containedInIndex(r)).collect(Collectors.toList());
-        return new ChangeSet(this, target, insertKeys, updateKeys, deleteKeys);
+        List<Snapshot.Key> deleteKeys = new ArrayList<>();
+        for (Record rec : target.records)
+            if (matching(rec) == null)
+                deleteKeys.add(rec.key());
+        List<Snapshot.Key> updateKeys = new ArrayList<>();
+        List<Snapshot.Key> insertKeys = new ArrayList<>();
+        for (Record rec : records) {
+            Record other = target.matching(rec);
+            if (other == null)
+                insertKeys.add(rec.key());
+            else if (!rec.equals(other, useColumn))
+                updateKeys.add(rec.key());
+        }
+        Metrics.getInstance().table(table.name).since(Metrics.Phase.DELTA, start);
+        return new ChangeSet(this, target, insertKeys, updateKeys, deleteKeys, useColumn);
     }
 
-    private boolean[] useColumns(List<String> ignoreColumns) {
+    boolean[] useColumns(List<String> ignoreColumns) {
         for (String ignoreColumn : ignoreColumns)
             if (pkColumns().anyMatch(ignoreColumn::equals))
                 throw new RuntimeException("PrimaryKey columns can not be ignored.");
@@ -152,18 +288,10 @@ public class Snapshot {
     }
 
     public void export(List<String> groupBy, File path) throws IOException {
-        if (!groupBy.stream().allMatch(g -> columnNames().anyMatch(g::equalsIgnoreCase)))
-            throw new RuntimeException("Column does not exist in table.");
-
-        Map<List<String>, List<Snapshot.Record>> groups = records.stream().collect(Collectors.groupingBy(rec -> groupBy.stream().map(rec::column).collect(Collectors.toList())));
-
-        for (Map.Entry<List<String>, List<Snapshot.Record>> group : groups.entrySet()) {
-            StringJoiner whereGrp = new StringJoiner(" and ");
-            if (where != null) whereGrp.add(where);
-
-            IntStream.range(0, group.getKey().size()).mapToObj(i -> groupBy.get(i) + " = " + group.getKey().get(i)).forEach(whereGrp::add);
-            StringJoiner filename = new StringJoiner("_", "", ".snapshot").add(getTableName()).add(String.join("_", group.getKey()));
-            export(Files.newOutputStream(new File(path, filename.toString()).toPath()), whereGrp.toString(), group.getValue());
+        try (GroupedExport export = new GroupedExport(this, groupBy, path)) {
+            for (Record r : records)
+                export.add(r.columns);
+            export.finish();
         }
     }
 
@@ -172,45 +300,10 @@ public class Snapshot {
     }
 
     private void export(OutputStream out, String whereStmt, List<Record> recs) throws IOException {
-        ObjectNode root = MAPPER.createObjectNode();
-        root.putPOJO(TABLE, this.table);
-        root.put(WHERE, whereStmt);
-
-        ArrayNode rows = root.putArray(RECORDS);
-        for (Record r : recs) {
-            ObjectNode node = MAPPER.createObjectNode();
-            for (int i = 0; i < table.columns.size(); i++) {
-                String value = r.columns[i];
-                TableMeta.Column column = table.columns.get(i);
-                switch (column.datatype) {
-                    case TINYINT:
-                    case INTEGER:
-                        node.put(column.name, value != null ? Integer.valueOf(value) : null);
-                        break;
-                    case SMALLINT:
-                        node.put(column.name, value != null ? Short.valueOf(value) : null);
-                        break;
-                    case BIGINT:
-                        node.put(column.name, value != null ? new BigInteger(value) : null);
-                        break;
-                    case FLOAT:
-                        node.put(column.name, value != null ? Float.valueOf(value) : null);
-                        break;
-                    case REAL:
-                    case DOUBLE:
-                        node.put(column.name, value != null ? Double.valueOf(value) : null);
-                        break;
-                    case BIT:
-                    case NULL:
-                    default:
-                        node.put(column.name, value);
-                        break;
-                }
-            }
-            rows.add(node);
+        try (SnapshotWriter writer = new SnapshotWriter(out, this, whereStmt)) {
+            for (Record r : recs)
+                writer.write(r.columns);
         }
-
-        OBJECT_WRITER.writeValue(out, root);
     }
 
     public static class Key {
@@ -225,6 +318,10 @@ public class Snapshot {
             return Arrays.stream(columns);
         }
 
+        String[] values() {
+            return columns;
+        }
+
         public String toString() {
             return Arrays.toString(columns);
         }
@@ -262,10 +359,22 @@ public class Snapshot {
             return Arrays.stream(columns);
         }
 
+        String column(int index) {
+            return columns[index];
+        }
+
         public int columnType(String name) {
             return snapshot.table.columns.get(snapshot.table.columnIndex.get(name)).datatype;
         }
 
+        int keyColumnCount() {
+            return snapshot.table.primaryKey.getPkIndices().length;
+        }
+
+        String keyColumn(int i) {
+            return columns[snapshot.table.primaryKey.getPkIndices()[i]];
+        }
+
         public Key key() {
             if (snapshot.table.primaryKey == null)
                 return null;
@@ -281,8 +390,12 @@ public class Snapshot {
         }
 
         public boolean equals(Record comp, boolean[] useColumn) {
+            return equals(comp.columns, useColumn);
+        }
+
+        boolean equals(String[] values, boolean[] useColumn) {
             for (int i = 0; i < columns.length; i++)
-                if ((useColumn == null || useColumn[i]) && !Objects.equals(columns[i], comp.columns[i]))
+                if ((useColumn == null || useColumn[i]) && !Objects.equals(columns[i], values[i]))
                     return false;
 
             return true;
@@ -0,0 +1,355 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.databind.*;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Many snapshots in one file. The file starts with a magic number and the length of the manifest, followed
+ * by the manifest and the data blocks. The manifest holds per table the meta data, where condition, row
+ * count and position of its block; a block is the gzipped JSON array of the table's records, each record an
+ * array of its column values. Blocks are written to temporary files concurrently and concatenated by
+ * {@link Writer#finish()}; tables are read concurrently, each from its own position in the file.
+ */
+public class SnapshotBundle {
+
+    public static final String EXTENSION = "bundle";
+
+    private static final byte[] MAGIC = "DBDBNDL1".getBytes(StandardCharsets.US_ASCII);
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public static boolean isBundle(File file) {
+        return file.getName().endsWith("." + EXTENSION);
+    }
+
+    public static SnapshotBundle open(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException(file + " is not a snapshot bundle.");
+            byte[] manifest = new byte[in.readInt()];
+            in.readFully(manifest);
+            return new SnapshotBundle(file, MAPPER.readValue(manifest, Manifest.class), MAGIC.length + 4L + manifest.length);
+        }
+    }
+
+    private final File file;
+    private final Manifest manifest;
+    private final long dataStart;
+
+    private SnapshotBundle(File file, Manifest manifest, long dataStart) {
+        this.file = file;
+        this.manifest = manifest;
+        this.dataStart = dataStart;
+    }
+
+    public List<Entry> getTables() {
+        return manifest.tables;
+    }
+
+    public Entry entry(String table) {
+        return manifest.tables.stream().filter(e -> e.table.name.equalsIgnoreCase(table)).findFirst().orElse(null);
+    }
+
+    /**
+     * Reads the snapshot of a table. Safe to call concurrently.
+     */
+    public Snapshot read(Entry entry) throws IOException {
+        Snapshot snapshot = new Snapshot(entry.table, entry.where);
+        snapshot.setTrackColumn(entry.trackColumn);
+        snapshot.setHighWaterMark(entry.highWaterMark);
+        snapshot.setLobStore(Snapshot.lobStore(file, entry.lobs));
+
+        int columnCount = entry.table.columns.size();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(dataStart + entry.offset);
+            InputStream block = new GZIPInputStream(new Region(Channels.newInputStream(channel), entry.length), 1 << 16);
+            try (JsonParser parser = Snapshot.MAPPER.getFactory().createParser(block)) {
+                if (parser.nextToken() != JsonToken.START_ARRAY)
+                    throw new IOException("Block of table " + entry.table.name + " in " + file + " is corrupt.");
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    String[] record = new String[columnCount];
+                    int i = 0;
+                    for (JsonToken value = parser.nextToken(); value != JsonToken.END_ARRAY; value = parser.nextToken()) {
+                        if (i >= columnCount)
+                            throw new IOException("Record has more values than table " + entry.table.name + " has columns.");
+                        record[i++] = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    }
+                    snapshot.addRecord(record);
+                }
+            }
+        }
+        if (snapshot.getRecords().size() != entry.rows)
+            throw new IOException("Table " + entry.table.name + " in " + file + " has " + snapshot.getRecords().size() + " rows instead of " + entry.rows + ".");
+        return snapshot;
+    }
+
+    /**
+     * Reads all snapshots, decoding up to the given number of tables at a time.
+     */
+    public List<Snapshot> readAll(int threads) throws IOException {
+        ExecutorService executor = Threads.newTableExecutor(Math.max(1, threads));
+        try {
+            List<Future<Snapshot>> futures = new ArrayList<>();
+            for (Entry entry : manifest.tables)
+                futures.add(executor.submit(() -> read(entry)));
+            List<Snapshot> snapshots = new ArrayList<>();
+            for (Future<Snapshot> future : futures)
+                snapshots.add(future.get());
+            return snapshots;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading " + file + " interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class Manifest {
+
+        List<Entry> tables = new ArrayList<>();
+
+        public Manifest() {
+        }
+
+        public List<Entry> getTables() {
+            return tables;
+        }
+
+    }
+
+    public static class Entry {
+
+        TableMeta table;
+        String where;
+        String trackColumn;
+        String highWaterMark;
+        String lobs;
+        long rows;
+        long offset;
+        long length;
+
+        public Entry() {
+        }
+
+        public TableMeta getTable() {
+            return table;
+        }
+
+        public String getWhere() {
+            return where;
+        }
+
+        public String getTrackColumn() {
+            return trackColumn;
+        }
+
+        public String getHighWaterMark() {
+            return highWaterMark;
+        }
+
+        public String getLobs() {
+            return lobs;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+    }
+
+    /**
+     * Collects the blocks of a bundle. Blocks of different tables can be written concurrently.
+     */
+    public static class Writer implements Closeable {
+
+        private final File file;
+        private final File directory;
+        private final Map<Entry, File> blocks = new ConcurrentHashMap<>();
+
+        public Writer(File file) throws IOException {
+            this.file = file;
+            this.directory = Files.createTempDirectory("dbd-bundle").toFile();
+        }
+
+        /**
+         * Opens the block of a table; its entry is added to the bundle when the block is closed.
+         */
+        public Block block(Snapshot header) throws IOException {
+            Entry entry = new Entry();
+            entry.table = header.getTable();
+            entry.where = header.getWhere();
+            entry.trackColumn = header.getTrackColumn();
+            entry.highWaterMark = header.getHighWaterMark();
+            LobStore lobs = header.getLobStore();
+            entry.lobs = lobs != null && lobs.getDirectory() != null ? lobs.getDirectory().getPath() : null;
+            return new Block(this, entry, File.createTempFile("block", ".gz", directory));
+        }
+
+        public void write(Snapshot snapshot) throws IOException {
+            try (Block block = block(snapshot)) {
+                for (Snapshot.Record record : snapshot.getRecords())
+                    block.write(record.columns().toArray(String[]::new));
+            }
+        }
+
+        /**
+         * Writes magic number, manifest and the blocks ordered by table name to the bundle file.
+         */
+        public File finish() throws IOException {
+            List<Entry> entries = new ArrayList<>(blocks.keySet());
+            entries.sort(Comparator.comparing(e -> e.table.name.toLowerCase()));
+            Manifest manifest = new Manifest();
+            long offset = 0;
+            for (Entry entry : entries) {
+                entry.offset = offset;
+                entry.length = blocks.get(entry).length();
+                offset += entry.length;
+                manifest.tables.add(entry);
+            }
+
+            byte[] json = MAPPER.writeValueAsBytes(manifest);
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), 1 << 16))) {
+                out.write(MAGIC);
+                out.writeInt(json.length);
+                out.write(json);
+                for (Entry entry : entries)
+                    Files.copy(blocks.get(entry).toPath(), out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (File block : blocks.values())
+                Files.deleteIfExists(block.toPath());
+            File[] left = directory.listFiles();
+            if (left != null)
+                for (File block : left)
+                    Files.deleteIfExists(block.toPath());
+            Files.deleteIfExists(directory.toPath());
+        }
+
+    }
+
+    public static class Block implements Closeable {
+
+        private final Writer writer;
+        private final Entry entry;
+        private final File file;
+        private final JsonGenerator generator;
+        private boolean closed;
+
+        private Block(Writer writer, Entry entry, File file) throws IOException {
+            this.writer = writer;
+            this.entry = entry;
+            this.file = file;
+            this.generator = Snapshot.MAPPER.getFactory().createGenerator(new GZIPOutputStream(Files.newOutputStream(file.toPath()), 1 << 16));
+            generator.writeStartArray();
+        }
+
+        public void write(String[] record) throws IOException {
+            generator.writeStartArray();
+            for (String value : record)
+                if (value == null)
+                    generator.writeNull();
+                else
+                    generator.writeString(value);
+            generator.writeEndArray();
+            entry.rows++;
+        }
+
+        public long getRows() {
+            return entry.rows;
+        }
+
+        /**
+         * Drops the block, e.g. after a failed export; the table is left out of the bundle.
+         */
+        public void discard() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            generator.close();
+            Files.deleteIfExists(file.toPath());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            generator.writeEndArray();
+            generator.close();
+            writer.blocks.put(entry, file);
+        }
+
+    }
+
+    // Reads at most the given number of bytes, so a block does not run into the next one.
+    private static class Region extends FilterInputStream {
+
+        private long remaining;
+
+        Region(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = super.read();
+            if (b >= 0)
+                remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0)
+                remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+    }
+
+}
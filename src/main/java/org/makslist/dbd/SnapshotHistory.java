@@ -0,0 +1,224 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.databind.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Versions of a table's snapshot in a directory: a full base snapshot plus, per later version, a gzipped
+ * delta holding the inserted and updated rows and the keys of the deleted rows. A version is read by applying
+ * the deltas since its base. A new base is written every n versions, when the columns or the where condition
+ * change, when the delta would hold more than half of the rows, and for tables without primary key.
+ */
+public class SnapshotHistory {
+
+    public static final String DIRECTORY_EXTENSION = "history";
+    public static final String MANIFEST = "history.manifest";
+    public static final String DELTA_EXTENSION = "delta";
+    public static final int REBASE_EVERY = 30;
+
+    private static final String UPSERTS = "upserts";
+    private static final String DELETES = "deletes";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public static boolean isHistory(File directory) {
+        return directory.isDirectory() && directory.getName().endsWith("." + DIRECTORY_EXTENSION);
+    }
+
+    public static SnapshotHistory open(File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        SnapshotHistory history = manifest.exists() ? MAPPER.readValue(manifest, SnapshotHistory.class) : new SnapshotHistory();
+        history.directory = directory;
+        return history;
+    }
+
+    List<Version> versions = new ArrayList<>();
+
+    private File directory;
+
+    public SnapshotHistory() {
+    }
+
+    public List<Version> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Adds the snapshot as the newest version, as delta to the previous version or as new base.
+     */
+    public Version append(String name, Snapshot snapshot, int rebaseEvery) throws IOException {
+        if (versions.stream().anyMatch(v -> v.name.equals(name)))
+            throw new IOException("Version " + name + " is already in " + directory + ".");
+        Files.createDirectories(directory.toPath());
+
+        Version version = new Version();
+        version.name = name;
+        version.rows = snapshot.getRecords().size();
+
+        Snapshot previous = versions.isEmpty() ? null : read(versions.get(versions.size() - 1).name);
+        ChangeSet change = null;
+        if (previous != null && snapshot.getTable().primaryKey != null && deltasSinceBase() + 1 < rebaseEvery
+                && snapshot.getTable().columns.equals(previous.getTable().columns) && Objects.equals(snapshot.getWhere(), previous.getWhere())) {
+            change = snapshot.delta(previous, Collections.emptyList());
+            if (change.insertRecs().size() + change.updateRecs().size() + change.deleteRecs().size() > snapshot.getRecords().size() / 2)
+                change = null;
+        }
+
+        if (change == null) {
+            version.base = true;
+            version.file = name + "." + Starter.FILE_EXTENSION;
+            try (OutputStream out = Files.newOutputStream(new File(directory, version.file).toPath())) {
+                snapshot.export(out);
+            }
+        } else {
+            version.file = name + "." + DELTA_EXTENSION;
+            writeDelta(new File(directory, version.file), change, version);
+        }
+        versions.add(version);
+        save();
+        return version;
+    }
+
+    private int deltasSinceBase() {
+        int deltas = 0;
+        for (int i = versions.size() - 1; i >= 0 && !versions.get(i).base; i--)
+            deltas++;
+        return deltas;
+    }
+
+    /**
+     * The snapshot as of the version, or of the newest version if null.
+     */
+    public Snapshot read(String name) throws IOException {
+        if (versions.isEmpty())
+            throw new IOException(directory + " holds no versions.");
+        int last = versions.size() - 1;
+        if (name != null) {
+            last = -1;
+            for (int i = 0; i < versions.size(); i++)
+                if (versions.get(i).name.equals(name))
+                    last = i;
+            if (last < 0)
+                throw new IOException("Version " + name + " is not in " + directory + ".");
+        }
+        int base = last;
+        while (!versions.get(base).base)
+            base--;
+
+        Snapshot snapshot = Snapshot.read(new File(directory, versions.get(base).file));
+        for (int i = base + 1; i <= last; i++)
+            applyDelta(new File(directory, versions.get(i).file), snapshot);
+        return snapshot;
+    }
+
+    private static void writeDelta(File file, ChangeSet change, Version version) throws IOException {
+        try (JsonGenerator generator = Snapshot.MAPPER.getFactory().createGenerator(new GZIPOutputStream(Files.newOutputStream(file.toPath())))) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(UPSERTS);
+            for (Snapshot.Record record : change.insertRecs())
+                write(generator, record.columns().toArray(String[]::new));
+            for (Snapshot.Record record : change.updateRecs())
+                write(generator, record.columns().toArray(String[]::new));
+            generator.writeEndArray();
+            generator.writeArrayFieldStart(DELETES);
+            for (Snapshot.Record record : change.deleteRecs())
+                write(generator, record.key().columns().toArray(String[]::new));
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        version.upserts = change.insertRecs().size() + change.updateRecs().size();
+        version.deletes = change.deleteRecs().size();
+    }
+
+    private static void write(JsonGenerator generator, String[] values) throws IOException {
+        generator.writeStartArray();
+        for (String value : values)
+            if (value == null)
+                generator.writeNull();
+            else
+                generator.writeString(value);
+        generator.writeEndArray();
+    }
+
+    private static void applyDelta(File file, Snapshot snapshot) throws IOException {
+        Snapshot upserts = new Snapshot(snapshot.getTable(), snapshot.getWhere());
+        Set<Snapshot.Key> deletes = new HashSet<>();
+        try (JsonParser parser = Snapshot.MAPPER.getFactory().createParser(new GZIPInputStream(Files.newInputStream(file.toPath())))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException(file + " is not a history delta.");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY)
+                    throw new IOException(file + " is not a history delta.");
+                for (String[] values = read(parser); values != null; values = read(parser))
+                    if (UPSERTS.equals(field))
+                        upserts.addRecord(values);
+                    else if (DELETES.equals(field))
+                        deletes.add(new Snapshot.Key(values));
+            }
+        }
+        snapshot.remove(deletes);
+        snapshot.merge(upserts);
+    }
+
+    // Next array of values, or null at the end of the enclosing array.
+    private static String[] read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+            return null;
+        List<String> values = new ArrayList<>();
+        for (JsonToken value = parser.nextToken(); value != JsonToken.END_ARRAY; value = parser.nextToken())
+            values.add(value == JsonToken.VALUE_NULL ? null : parser.getText());
+        return values.toArray(new String[0]);
+    }
+
+    private void save() throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        File tmp = new File(manifest.getPath() + ".tmp");
+        MAPPER.writeValue(tmp, this);
+        Files.move(tmp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class Version {
+
+        String name;
+        String file;
+        boolean base;
+        long rows;
+        long upserts;
+        long deletes;
+
+        public Version() {
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public boolean isBase() {
+            return base;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getUpserts() {
+            return upserts;
+        }
+
+        public long getDeletes() {
+            return deletes;
+        }
+
+    }
+
+}
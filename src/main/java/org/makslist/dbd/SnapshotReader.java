@@ -0,0 +1,115 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.core.*;
+
+import java.io.*;
+
+/**
+ * Reads a snapshot file record by record instead of loading all records at once.
+ */
+public class SnapshotReader implements Closeable {
+
+    private final JsonParser parser;
+    private final Snapshot header;
+    private final int columnCount;
+    private boolean done;
+
+    public SnapshotReader(File file) throws IOException {
+        this.parser = Snapshot.MAPPER.getFactory().createParser(file);
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new IOException(file + " is not a snapshot file.");
+
+        TableMeta table = null;
+        String where = null;
+        String trackColumn = null;
+        String highWaterMark = null;
+        String lobPath = null;
+        boolean records = false;
+        while (!records && parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case Snapshot.TABLE:
+                    table = Snapshot.MAPPER.readValue(parser, TableMeta.class);
+                    break;
+                case Snapshot.WHERE:
+                    where = text(value);
+                    break;
+                case Snapshot.TRACK_COLUMN:
+                    trackColumn = text(value);
+                    break;
+                case Snapshot.HIGH_WATER_MARK:
+                    highWaterMark = text(value);
+                    break;
+                case Snapshot.LOBS:
+                    lobPath = text(value);
+                    break;
+                case Snapshot.RECORDS:
+                    records = true;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (table == null || !records)
+            throw new IOException(file + " has no table meta data before its records.");
+
+        this.header = new Snapshot(table, where);
+        this.header.setTrackColumn(trackColumn);
+        this.header.setHighWaterMark(highWaterMark);
+        this.header.setLobStore(Snapshot.lobStore(file, lobPath));
+        this.columnCount = table.columns.size();
+        this.done = value(JsonToken.START_ARRAY);
+    }
+
+    private boolean value(JsonToken expected) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL)
+            return true;
+        if (token != expected)
+            throw new IOException("Unexpected " + token + " in snapshot records.");
+        return false;
+    }
+
+    /**
+     * The snapshot without records: table meta data, where condition, tracking column and LOB store.
+     */
+    public Snapshot getHeader() {
+        return header;
+    }
+
+    /**
+     * Next record in file order, or null after the last one.
+     */
+    public String[] next() throws IOException {
+        if (done)
+            return null;
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            done = true;
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT)
+            throw new IOException("Unexpected " + token + " in snapshot records.");
+
+        String[] record = new String[columnCount];
+        int i = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            JsonToken value = parser.nextToken();
+            if (i >= columnCount)
+                throw new IOException("Record has more values than table " + header.getTableName() + " has columns.");
+            record[i++] = text(value);
+        }
+        return record;
+    }
+
+    private String text(JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.core.*;
+
+import java.io.*;
+import java.math.*;
+
+import static java.sql.Types.*;
+
+public class SnapshotWriter implements Closeable {
+
+    private final TableMeta table;
+    private final JsonGenerator generator;
+    private long count;
+    private long nanos;
+    private boolean aborted;
+
+    public SnapshotWriter(OutputStream out, Snapshot snapshot, String whereStmt) throws IOException {
+        this.table = snapshot.getTable();
+        this.generator = Snapshot.OBJECT_WRITER.createGenerator(out);
+
+        generator.writeStartObject();
+        generator.writeObjectField(Snapshot.TABLE, table);
+        generator.writeStringField(Snapshot.WHERE, whereStmt);
+        if (snapshot.getTrackColumn() != null) {
+            generator.writeStringField(Snapshot.TRACK_COLUMN, snapshot.getTrackColumn());
+            generator.writeStringField(Snapshot.HIGH_WATER_MARK, snapshot.getHighWaterMark());
+        }
+        LobStore lobs = snapshot.getLobStore();
+        if (lobs != null && lobs.getDirectory() != null)
+            generator.writeStringField(Snapshot.LOBS, lobs.getDirectory().getPath());
+        generator.writeArrayFieldStart(Snapshot.RECORDS);
+    }
+
+    public void write(String[] columns) throws IOException {
+        long start = System.nanoTime();
+        generator.writeStartObject();
+        for (int i = 0; i < table.columns.size(); i++) {
+            String value = columns[i];
+            TableMeta.Column column = table.columns.get(i);
+            if (value == null) {
+                generator.writeNullField(column.name);
+                continue;
+            }
+            generator.writeFieldName(column.name);
+            switch (column.datatype) {
+                case TINYINT:
+                case INTEGER:
+                    generator.writeNumber(Integer.parseInt(value));
+                    break;
+                case SMALLINT:
+                    generator.writeNumber(Short.parseShort(value));
+                    break;
+                case BIGINT:
+                    generator.writeNumber(new BigInteger(value));
+                    break;
+                case FLOAT:
+                    generator.writeNumber(Float.parseFloat(value));
+                    break;
+                case REAL:
+                case DOUBLE:
+                    generator.writeNumber(Double.parseDouble(value));
+                    break;
+                case BIT:
+                case NULL:
+                default:
+                    generator.writeString(value);
+                    break;
+            }
+        }
+        generator.writeEndObject();
+        count++;
+        nanos += System.nanoTime() - start;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Leaves the snapshot unfinished on close, so a failed export cannot be read as a complete one.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.close();
+            return;
+        }
+        long start = System.nanoTime();
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+        Metrics.getInstance().table(table.name).time(Metrics.Phase.SERIALIZE, nanos + System.nanoTime() - start);
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.makslist.dbd;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Delta of a snapshot file against its table within a memory budget. Both sides are hash-partitioned by
+ * primary key, or by all columns without one, into temporary record files, then each pair of partitions is compared on its own.
+ */
+public class SpillDelta implements Closeable {
+
+    // Heap of both snapshots together per byte of the reference file.
+    private static final int HEAP_PER_FILE_BYTE = 6;
+    private static final int MAX_PARTITIONS = 256;
+
+    /**
+     * Number of partitions to compare the snapshot file in, 1 for the in-memory delta. Tables without primary
+     * key are compared in memory, their delta holds every row anyway.
+     */
+    public static int partitions(File reference, long memoryBudget) throws IOException {
+        if (memoryBudget <= 0)
+            return 1;
+        long needed = reference.length() * HEAP_PER_FILE_BYTE;
+        long partitions = (needed + memoryBudget - 1) / memoryBudget;
+        if (partitions <= 1)
+            return 1;
+
+        OutPut output = OutPut.getInstance();
+        try (SnapshotReader reader = new SnapshotReader(reference)) {
+            if (reader.getHeader().getTable().primaryKey == null) {
+                output.userln("   Table " + reader.getHeader().getTableName() + " has no primary key, " + reference.getName() + " is compared in memory");
+                return 1;
+            }
+        }
+        if (partitions > MAX_PARTITIONS) {
+            output.error("   " + reference.getName() + " needs " + partitions + " partitions to fit the memory budget, only " + MAX_PARTITIONS + " are used; the heap may exceed the budget");
+            return MAX_PARTITIONS;
+        }
+        return (int) partitions;
+    }
+
+    private final File reference;
+    private final int partitions;
+    private final Snapshot header;
+    private final File directory;
+    private final RecordFile[] referenceParts;
+    private final RecordFile[] currentParts;
+    private TableMeta currentTable;
+
+    private long referenceRows;
+    private long currentRows;
+    private long inserts;
+    private long updates;
+    private long deletes;
+
+    public SpillDelta(File reference, int partitions) throws IOException {
+        this.reference = reference;
+        this.partitions = partitions;
+        try (SnapshotReader reader = new SnapshotReader(reference)) {
+            this.header = reader.getHeader();
+        }
+        this.directory = Files.createTempDirectory("dbd-delta").toFile();
+        this.referenceParts = new RecordFile[partitions];
+        this.currentParts = new RecordFile[partitions];
+        for (int p = 0; p < partitions; p++) {
+            referenceParts[p] = new RecordFile(new File(directory, "reference_" + p + ".rec"));
+            currentParts[p] = new RecordFile(new File(directory, "current_" + p + ".rec"));
+        }
+    }
+
+    public Snapshot getHeader() {
+        return header;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void partition(Crud crud) throws IOException, SQLException {
+        TableMeta referenceTable = header.getTable();
+        try (SnapshotReader reader = new SnapshotReader(reference); Partitions parts = new Partitions(referenceParts)) {
+            for (String[] record = reader.next(); record != null; record = reader.next())
+                parts.write(referenceTable, record);
+            referenceRows = parts.count;
+        }
+
+        currentTable = crud.tableMetaData(header.getTableName());
+        try (Partitions parts = new Partitions(currentParts)) {
+            crud.scan(currentTable, header.getWhere(), header.getLobStore() != null ? LobStore.digestOnly() : null, record -> parts.write(currentTable, record));
+            currentRows = parts.count;
+        }
+    }
+
+    /**
+     * Compares one pair of partitions after the other and hands each change set to the task.
+     */
+    public void forEach(List<String> ignoreColumns, PartitionTask task) throws IOException, SQLException {
+        for (int p = 0; p < partitions; p++) {
+            Snapshot ref = load(referenceParts[p], header.getTable(), header.getLobStore());
+            Snapshot current = load(currentParts[p], currentTable, header.getLobStore() != null ? LobStore.digestOnly() : null);
+            ChangeSet change = ref.delta(current, ignoreColumns);
+            inserts += change.insertRecs().size();
+            updates += change.updateRecs().size();
+            deletes += change.deleteRecs().size();
+            task.run(change);
+            referenceParts[p].delete();
+            currentParts[p].delete();
+        }
+    }
+
+    private Snapshot load(RecordFile part, TableMeta table, LobStore lobs) throws IOException {
+        Snapshot snapshot = new Snapshot(table, header.getWhere());
+        snapshot.setLobStore(lobs);
+        if (part.getFile().exists())
+            try (RecordFile.Cursor cursor = part.read()) {
+                for (String[] record = cursor.next(); record != null; record = cursor.next())
+                    snapshot.addRecord(record);
+            }
+        return snapshot;
+    }
+
+    private int partition(TableMeta table, String[] record) {
+        int hash = 1;
+        if (table.primaryKey == null)
+            hash = Arrays.hashCode(record);
+        else
+            for (int i : table.primaryKey.getPkIndices())
+                hash = 31 * hash + Objects.hashCode(record[i]);
+        hash *= 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), partitions);
+    }
+
+    public long getReferenceRows() {
+        return referenceRows;
+    }
+
+    public long getCurrentRows() {
+        return currentRows;
+    }
+
+    public long getInserts() {
+        return inserts;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public long getDeletes() {
+        return deletes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int p = 0; p < partitions; p++) {
+            referenceParts[p].delete();
+            currentParts[p].delete();
+        }
+        Files.deleteIfExists(directory.toPath());
+    }
+
+    public interface PartitionTask {
+        void run(ChangeSet change) throws IOException, SQLException;
+    }
+
+    private class Partitions implements Closeable {
+
+        private final RecordFile.Appender[] appenders;
+        private long count;
+
+        Partitions(RecordFile[] files) throws IOException {
+            appenders = new RecordFile.Appender[files.length];
+            for (int p = 0; p < files.length; p++)
+                appenders[p] = files[p].append();
+        }
+
+        void write(TableMeta table, String[] record) throws IOException {
+            appenders[partition(table, record)].write(record);
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RecordFile.Appender appender : appenders)
+                appender.close();
+        }
+
+    }
+
+}
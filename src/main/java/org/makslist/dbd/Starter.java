@@ -6,6 +6,8 @@ import java.sql.*;
 import java.text.*;
 import java.util.Date;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 public class Starter {
 
@@ -17,8 +19,11 @@ public class Starter {
             " |_____/|____/ /________\\\\___|_|\\__\\__,_|\n";
 
     public static final String FILE_EXTENSION = "snapshot";
+    public static final String LOB_DIRECTORY_EXTENSION = "lobs";
 
-    private static final SimpleDateFormat EXPORT_DATE_FORMAT = new SimpleDateFormat("yyyyMMdd_HHmm");
+    private static final String UNDO_WITH_LOB_FILES = "   Error: An undo log can not restore LOB columns kept in side files, the table is not imported.";
+
+    private static final ThreadLocal<SimpleDateFormat> EXPORT_DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyyMMdd_HHmm"));
 
     public static void main(String[] args) {
         Config config = Config.parseArgs(args);
@@ -27,6 +32,13 @@ public class Starter {
         if (config.isVerbose()) output = OutPut.getInstance(OutPut.Level.INFO);
         else output = OutPut.getInstance(OutPut.Level.USER);
 
+        if (config.getLogFile() != null)
+            try {
+                output.setFile(new File(config.getLogFile()));
+            } catch (IOException e) {
+                output.error("Log file " + config.getLogFile() + " not writable: " + e.getMessage());
+            }
+
         if (config.isHelp()) {
             output.userln(LOGO);
             output.userln(Config.COMMAND_LINE_PARAMETER);
@@ -34,6 +46,7 @@ public class Starter {
         }
 
         output.userln("DBΔelta");
+        Snapshot.useOffHeapIndex(config.isOffHeapIndex());
 
         if (config.getVendor() == null) {
             output.error("\nNo vendor given!");
@@ -41,20 +54,35 @@ public class Starter {
             System.exit(2);
         }
 
-        try (Crud crud = connect(config, output)) {
+        if (config.isBulk() && !config.isCommit()) {
+            output.error("\n--bulk commits the import with its DDL and needs --commit!");
+            System.exit(2);
+        }
+        if (config.isBulk() && (config.getCommitRows() > 0 || config.getCommitSeconds() > 0)) {
+            output.error("\n--bulk validates the foreign keys before the commit and can not commit in intervals!");
+            System.exit(2);
+        }
+
+        try (CrudPool pool = CrudPool.open(Math.max(1, config.getThreads()), () -> connect(config, output))) {
+            Crud crud = pool.primary();
             if (config.showDeltaFor() != null) {
                 try {
                     File file = new File(config.showDeltaFor());
                     if (!file.exists())
                         output.error(file.getName() + " does not exists.");
-                    else if (file.isFile() && file.exists()) {
+                    else if (file.isFile() && SnapshotBundle.isBundle(file)) {
+                        SnapshotBundle bundle = SnapshotBundle.open(file);
+                        output.userln("Comparing " + bundle.getTables().size() + " tables of bundle " + file);
+                        pool.forEach(bundle.getTables(), (entry, c) -> compareSnapshot(bundle.read(entry), file + " " + entry.getTable().name, config, output, c));
+                    } else if (file.isFile() && file.exists()) {
                         compareFile(file, config, output, crud);
+                    } else if (SnapshotHistory.isHistory(file)) {
+                        compareSnapshot(SnapshotHistory.open(file).read(config.getAt()), "history " + file + (config.getAt() != null ? " at " + config.getAt() : ""), config, output, crud);
                     } else if (file.isDirectory()) {
                         List<File> files = Arrays.asList(Objects.requireNonNull(file.listFiles(f -> f.getName().contains(config.showDeltaFor()) && f.getName().endsWith("." + FILE_EXTENSION))));
                         files.sort(Comparator.comparing(File::getName));
                         if (!files.isEmpty())
-                            for (File f : files)
-                                compareFile(f, config, output, crud);
+                            pool.forEach(files, (f, c) -> compareFile(f, config, output, c));
                     }
                 } catch (IOException e) {
                     output.error(e.getMessage());
@@ -66,43 +94,40 @@ public class Starter {
                 if (!file.exists()) {
                     output.error(file.getName() + " does not exists.");
                     System.exit(2);
+                } else if (file.isFile() && SnapshotBundle.isBundle(file)) {
+                    SnapshotBundle bundle = SnapshotBundle.open(file);
+                    output.userln("Tables in bundle: " + bundle.getTables().stream().map(e -> e.getTable().name).collect(Collectors.toList()));
+                    if (output.question("   Importing " + bundle.getTables().size() + " tables?", "Y", "n"))
+                        pool.forEach(bundle.getTables(), (entry, c) -> importSnapshot(bundle.read(entry), file, config, c, null, output));
                 } else if (file.isFile() && file.exists())
-                    importFile(file, config, crud, output);
+                    importFile(file, config, crud, config.isParallelApply() ? pool : null, output);
+                else if (SnapshotHistory.isHistory(file))
+                    importSnapshot(SnapshotHistory.open(file).read(config.getAt()), file, config, crud, config.isParallelApply() ? pool : null, output);
                 else if (file.isDirectory()) {
                     List<File> files = Arrays.asList(Objects.requireNonNull(file.listFiles(f -> f.getName().contains(config.getImportFile()) && f.getName().endsWith("." + FILE_EXTENSION))));
                     files.sort(Comparator.comparing(File::getName));
                     if (!files.isEmpty()) {
                         output.userln("Files found: " + files);
                         if (output.question("   Importing " + files.size() + " files?", "Y", "n"))
-                            for (File f : files)
-                                importFile(f, config, crud, output);
+                            pool.forEach(files, (f, c) -> importFile(f, config, c, null, output));
                     }
                 }
                 if (!config.isAutocommit() && !config.isCommit())
                     try {
                         if (output.question("Committing changes?", "Y", "n"))
-                            crud.commit();
+                            pool.commit();
                         else
-                            crud.rollback();
+                            pool.rollback();
                     } catch (SQLException e) {
                         output.error("Commit/rollback failed with error: " + e.getMessage() + " / " + e.getSQLState());
                     }
 
             } else if (config.getExportTable() != null) {
                 try {
-                    for (String table : crud.tables(config.getExportTable())) {
-                        String filename = "." + File.separator + table.toLowerCase() + exportTimeAppendix(config) + "." + FILE_EXTENSION;
-                        try {
-                            output.userln("Export table " + table + " ");
-                            Snapshot snapshot = crud.fetch(table, config.getExportWhere());
-                            output.userln("   " + snapshot.getRecords().size() + " rows to file " + filename);
-                            snapshot.export(Files.newOutputStream(Paths.get(filename)));
-                        } catch (SQLException e) {
-                            output.error("   Error: " + e.getMessage());
-                        } catch (IOException e) {
-                            output.error(e.getMessage());
-                        }
-                    }
+                    if (config.getBundle() != null)
+                        exportBundle(crud.tables(config.getExportTable()), config, pool, output);
+                    else
+                        pool.forEach(crud.tables(config.getExportTable()), (table, c) -> exportTable(table, config, c, output));
                 } catch (SQLException e) {
                     crud.rollback();
                     output.error(e.getMessage() + "\n" + e.getSQLState());
@@ -113,29 +138,45 @@ public class Starter {
                 if (config.viewMeta().contains("%")) {
                     for (String name : crud.allViews(config.viewMeta())) {
                         View view = crud.view(name);
-                        System.out.println(view.toString());
+                        output.userln(view.toString());
                     }
                 } else {
                     View view = crud.view(config.viewMeta());
-                    System.out.println(view.toString());
+                    output.userln(view.toString());
                 }
             } else if (config.procedureMeta() != null) {
                 if (config.procedureMeta().contains("%")) {
                     for (String name : crud.allProcedures(config.procedureMeta())) {
                         StoredProcedure prc = crud.procedure(name);
-                        System.out.println(prc.toString());
+                        output.userln(prc.toString());
                     }
                 } else {
                     StoredProcedure prc = crud.procedure(config.procedureMeta());
-                    System.out.println(prc.toString());
+                    output.userln(prc.toString());
                 }
             } else output.error("No usable parameters given!");
         } catch (Exception e) {
+            output.flush();
             e.printStackTrace();
         }
+
+        if (config.getReport() != null)
+            try {
+                Metrics.getInstance().report(new File(config.getReport()));
+                output.userln("Run report written to " + config.getReport());
+            } catch (IOException e) {
+                output.error("Writing run report failed: " + e.getMessage());
+            }
     }
 
     private static Crud connect(Config config, OutPut output) {
+        Crud crud = connectVendor(config, output);
+        if (crud != null)
+            crud.setFetchSizes(config.getFetchSizes());
+        return crud;
+    }
+
+    private static Crud connectVendor(Config config, OutPut output) {
         switch (config.getVendor()) {
             case "oracle":
                 return Crud.connectOracle(config.getHostname(), config.getPort(), config.getServicename(), config.getUser(), config.getPassword(), config.isAutocommit());
@@ -155,19 +196,180 @@ public class Starter {
         }
     }
 
+    private static LobStore lobStore(String name, Config config) {
+        return config.isLobFiles() ? new LobStore(new File(name + "." + LOB_DIRECTORY_EXTENSION)) : null;
+    }
+
     private static String exportTimeAppendix(Config config) {
-        return config.isExportTime() ? "_" + EXPORT_DATE_FORMAT.format(new Date()) : "";
+        return config.isExportTime() ? "_" + EXPORT_DATE_FORMAT.get().format(new Date()) : "";
+    }
+
+    private static void exportTable(String table, Config config, Crud crud, OutPut output) {
+        if (config.getPageSize() > 0) {
+            exportChunked(table, config, crud, output);
+            return;
+        } else if (config.getTrackColumn() != null) {
+            exportIncremental(table, config, crud, output);
+            return;
+        } else if (config.isHistory()) {
+            exportHistory(table, config, crud, output);
+            return;
+        }
+        String name = table.toLowerCase() + exportTimeAppendix(config);
+        String filename = "." + File.separator + name + "." + FILE_EXTENSION;
+        crud.setLobStore(lobStore(name, config));
+        try {
+            output.userln("Export table " + table + " ");
+            if (!config.getGroupBy().isEmpty()) {
+                GroupedExport export = crud.exportGrouped(table, config.getExportWhere(), config.getGroupBy(), new File("."));
+                output.userln("   " + export.getRowCount() + " rows to " + export.getGroupCount() + " files grouped by " + String.join(", ", config.getGroupBy()));
+                return;
+            }
+            if (config.isSorted()) {
+                long rows = publish(new File(filename), out -> crud.exportSorted(table, config.getExportWhere(), out, config.getMemoryBudget()));
+                output.userln("   " + rows + " rows in primary key order to file " + filename);
+                return;
+            }
+            if (config.getDecoders() > 0) {
+                long rows = publish(new File(filename), out -> crud.export(table, config.getExportWhere(), out, config.getDecoders()));
+                output.userln("   " + rows + " rows to file " + filename);
+                return;
+            }
+            Snapshot snapshot = crud.fetch(table, config.getExportWhere());
+            output.userln("   " + snapshot.getRecords().size() + " rows to file " + filename);
+            snapshot.export(Files.newOutputStream(Paths.get(filename)));
+        } catch (SQLException e) {
+            output.error("   Error: " + e.getMessage());
+        } catch (IOException e) {
+            output.error(e.getMessage());
+        }
+    }
+
+    // Writes to a temporary file that replaces the target only when complete, a failed export leaves no truncated snapshot.
+    private static <T> T publish(File file, FileContent<T> content) throws SQLException, IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            T result;
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                result = content.write(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return result;
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private static void exportBundle(List<String> tables, Config config, CrudPool pool, OutPut output) throws IOException, InterruptedException {
+        File file = new File("." + File.separator + config.getBundle() + exportTimeAppendix(config) + "." + SnapshotBundle.EXTENSION);
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        try (SnapshotBundle.Writer bundle = new SnapshotBundle.Writer(file)) {
+            pool.forEach(tables, (table, c) -> {
+                output.userln("Export table " + table + " to bundle");
+                try {
+                    Snapshot header = new Snapshot(c.tableMetaData(table), config.getExportWhere());
+                    header.setLobStore(lobStore(table.toLowerCase() + exportTimeAppendix(config), config));
+                    try (SnapshotBundle.Block block = bundle.block(header)) {
+                        try {
+                            c.scan(header.getTable(), header.getWhere(), header.getLobStore(), block::write);
+                        } catch (SQLException | IOException | RuntimeException e) {
+                            block.discard();
+                            throw e;
+                        }
+                        output.userln("   " + block.getRows() + " rows of table " + table);
+                    }
+                } catch (SQLException | IOException | RuntimeException e) {
+                    failed.add(table);
+                    throw e;
+                }
+            });
+            bundle.finish();
+            output.userln(SnapshotBundle.open(file).getTables().size() + " tables to bundle " + file);
+            if (!failed.isEmpty())
+                output.error("   Left out after failed export: " + failed.stream().sorted().collect(Collectors.joining(", ")));
+        }
+    }
+
+    private static void exportChunked(String table, Config config, Crud crud, OutPut output) {
+        // no timestamp, a rerun has to find the manifest to resume
+        String name = table.toLowerCase();
+        crud.setLobStore(lobStore(name, config));
+        try {
+            output.userln("Export table " + table + " in chunks of " + config.getPageSize() + " rows");
+            ChunkedExport export = ChunkedExport.open(new File("."), name, table, config.getExportWhere(), config.getPageSize());
+            export.run(crud);
+            output.userln("   " + export.getRowCount() + " rows to " + export.getChunks().size() + " files, manifest " + name + "." + ChunkedExport.MANIFEST_EXTENSION);
+        } catch (SQLException e) {
+            output.error("   Error: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            output.error(e.getMessage());
+        }
+    }
+
+    private static void exportHistory(String table, Config config, Crud crud, OutPut output) {
+        File directory = new File("." + File.separator + table.toLowerCase() + "." + SnapshotHistory.DIRECTORY_EXTENSION);
+        if (config.isLobFiles())
+            output.userln("   LOB side files are not used for histories, LOB contents stay in the snapshot");
+        crud.setLobStore(null);
+        try {
+            output.userln("Export table " + table + " to history " + directory);
+            Snapshot snapshot = crud.fetch(table, config.getExportWhere());
+            SnapshotHistory history = SnapshotHistory.open(directory);
+            SnapshotHistory.Version version = history.append(EXPORT_DATE_FORMAT.get().format(new Date()), snapshot, config.getRebaseEvery());
+            output.userln("   " + version.getRows() + " rows as " + (version.isBase() ? "new base " : "delta of " + version.getUpserts() + " changed and " + version.getDeletes() + " deleted rows ") + version.getFile());
+        } catch (SQLException e) {
+            output.error("   Error: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            output.error(e.getMessage());
+        }
+    }
+
+    private static void exportIncremental(String table, Config config, Crud crud, OutPut output) {
+        File file = new File("." + File.separator + table.toLowerCase() + "." + FILE_EXTENSION);
+        crud.setLobStore(lobStore(table.toLowerCase(), config));
+        try {
+            output.userln("Export changes of table " + table + " by " + config.getTrackColumn());
+            Snapshot previous = file.exists() ? Snapshot.read(file) : null;
+            Snapshot snapshot = crud.fetchIncremental(table, config.getExportWhere(), config.getTrackColumn(), previous);
+            output.userln("   " + snapshot.getRecords().size() + " rows to file " + file);
+            // the previous file holds the high-water mark, replace it only once the new one is complete
+            File tmp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                snapshot.export(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (SQLException e) {
+            output.error("   Error: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            output.error(e.getMessage());
+        }
     }
 
     private static void compareFile(File file, Config config, OutPut output, Crud crud) throws IOException {
-        output.user("Comparing reference file " + file);
-        Snapshot reference = Snapshot.read(file);
+        int partitions = SpillDelta.partitions(file, config.getMemoryBudget());
+        if (partitions > 1) {
+            compareFileSpilled(file, partitions, config, output, crud);
+            return;
+        }
+
+        compareSnapshot(Snapshot.read(file), "file " + file, config, output, crud);
+    }
+
+    private static void compareSnapshot(Snapshot reference, String source, Config config, OutPut output, Crud crud) {
+        output.user("Comparing reference " + source);
         output.userln(" (" + reference.getRecords().size() + " records) to table " + reference.getTableName() + (reference.getWhere() != null ? " with condition " + reference.getWhere() : ""));
 
         if (crud.existsOrCreate(reference, false))
             try {
-                ChangeSet change = crud.delta(reference, config.getIgnoreColumns());
-                change.displayDiff(config.isVerbose());
+                if (config.isVerbose()) {
+                    ChangeSet change = config.isHash() ? crud.deltaByHash(reference, config.getIgnoreColumns())
+                            : config.isKeysFirst() ? crud.deltaByKeys(reference, config.getIgnoreColumns()) : crud.delta(reference, config.getIgnoreColumns());
+                    change.displayDiff(true);
+                } else {
+                    // counts only, no rows kept
+                    DeltaCount count = crud.countDelta(reference, config.getIgnoreColumns(), config.isHash());
+                    output.userln(summary(count.getInserts(), count.getUpdates(), count.getDeletes()));
+                }
             } catch (SQLException e) {
                 output.error("   Error: " + e.getMessage());
                 e.printStackTrace();
@@ -178,23 +380,137 @@ public class Starter {
             output.error("   Error: Table " + reference.getTableName() + " does not exist!");
     }
 
-    private static void importFile(File file, Config config, Crud crud, OutPut output) throws IOException {
-        Snapshot reference = Snapshot.read(file);
+    private static void compareFileSpilled(File file, int partitions, Config config, OutPut output, Crud crud) throws IOException {
+        try (SpillDelta delta = new SpillDelta(file, partitions)) {
+            Snapshot header = delta.getHeader();
+            output.userln("Comparing reference file " + file + " to table " + header.getTableName() + (header.getWhere() != null ? " with condition " + header.getWhere() : "") + " in " + partitions + " partitions");
+            if (!crud.existsOrCreate(header, false)) {
+                output.error("   Error: Table " + header.getTableName() + " does not exist!");
+                return;
+            }
+            delta.partition(crud);
+            delta.forEach(config.getIgnoreColumns(), change -> {
+                if (config.isVerbose() && !change.isEmpty())
+                    change.displayDiff(true);
+            });
+            output.userln("   " + delta.getReferenceRows() + " reference and " + delta.getCurrentRows() + " table rows compared");
+            output.userln(summary(delta.getInserts(), delta.getUpdates(), delta.getDeletes()));
+        } catch (SQLException e) {
+            output.error("   Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static String summary(long inserts, long updates, long deletes) {
+        if (inserts + updates + deletes == 0)
+            return "   No differences found.";
+        return "   Rows to" + (inserts > 0 ? " insert: " + inserts : "") + (deletes > 0 ? "  delete: " + deletes : "") + (updates > 0 ? "  update: " + updates : "");
+    }
+
+    private static void importFileSpilled(File file, int partitions, Config config, Crud crud, OutPut output) throws IOException {
+        try (SpillDelta delta = new SpillDelta(file, partitions)) {
+            Snapshot header = delta.getHeader();
+            output.userln("Importing reference data from " + file + " into table " + header.getTableName() + (header.getWhere() != null ? " with condition " + header.getWhere() : "") + " in " + partitions + " partitions");
+            if (config.isUndolog() && header.getLobStore() != null) {
+                output.error(UNDO_WITH_LOB_FILES);
+                return;
+            }
+            if (!crud.existsOrCreate(header, config.isForceInsert())) {
+                output.error("   Error: Table " + header.getTableName() + " does not exist!");
+                return;
+            }
+            delta.partition(crud);
+            ImportJournal journal = journal(file, header, config, output);
+            List<String> sqlUndoStmt = new ArrayList<>();
+            int[] partition = {0};
+            BulkLoad bulk = config.isBulk() ? crud.bulkLoad(header.getTableName()) : null;
+            boolean applied = false;
+            try {
+                delta.forEach(config.getIgnoreColumns(), change -> {
+                    if (journal != null)
+                        journal.scope("partition " + partition[0]++);
+                    if (!change.isEmpty())
+                        sqlUndoStmt.addAll(crud.apply(change, journal != null, config.isContinueOnError(), journal));
+                });
+                applied = true;
+            } finally {
+                if (bulk != null && applied)
+                    bulk.finish();
+                else if (bulk != null)
+                    bulk.abort();
+            }
+            output.userln(summary(delta.getInserts(), delta.getUpdates(), delta.getDeletes()));
+            if (config.isCommit())
+                crud.commit();
+            if (journal != null)
+                journal.complete();
+            if (config.isUndolog() && !sqlUndoStmt.isEmpty())
+                writeUndoLogs(header.getTableName(), sqlUndoStmt);
+        } catch (SQLException e) {
+            output.error("   Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void importFile(File file, Config config, Crud crud, CrudPool parallel, OutPut output) throws IOException {
+        int partitions = SpillDelta.partitions(file, config.getMemoryBudget());
+        if (partitions > 1) {
+            importFileSpilled(file, partitions, config, crud, output);
+            return;
+        }
+
+        importSnapshot(Snapshot.read(file), file, config, crud, parallel, output);
+    }
+
+    private static void importSnapshot(Snapshot reference, File file, Config config, Crud crud, CrudPool parallel, OutPut output) throws IOException {
         output.userln("Importing reference data from " + file + " into table " + reference.getTableName() + (reference.getWhere() != null ? " with condition " + reference.getWhere() : ""));
+        if (config.isUndolog() && reference.getLobStore() != null) {
+            output.error(UNDO_WITH_LOB_FILES);
+            return;
+        }
 
         if (crud.existsOrCreate(reference, !reference.isEmpty() && config.isForceInsert()))
             try {
-                ChangeSet change = crud.delta(reference, config.getIgnoreColumns());
+                // undo logs need the full rows of deleted records
+                boolean byHash = config.isHash() && !config.isUndolog();
+                boolean byKeys = config.isKeysFirst() && !config.isUndolog();
+                ChangeSet change = byHash ? crud.deltaByHash(reference, config.getIgnoreColumns())
+                        : byKeys ? crud.deltaByKeys(reference, config.getIgnoreColumns()) : crud.delta(reference, config.getIgnoreColumns(), config.isUndolog());
+                ImportJournal journal = journal(file, reference, config, output);
                 if (change.isEmpty())
                     output.userln("   No differences found");
                 else {
-                    List<String> sqlUndoStmt = crud.apply(change, config.isCommit(), config.isContinueOnError());
+                    BulkLoad bulk = config.isBulk() ? crud.bulkLoad(change.table()) : null;
+                    List<String> sqlUndoStmt;
+                    boolean applied = false;
+                    // bulk mode switches the checks off for the primary connection only and commits after finish
+                    if (bulk != null && parallel != null)
+                        output.userln("   Bulk mode applies on a single connection");
+                    try {
+                        if (parallel != null && journal == null && bulk == null)
+                            sqlUndoStmt = parallel.apply(change, config.isCommit(), config.isContinueOnError());
+                        else
+                            sqlUndoStmt = crud.apply(change, config.isCommit() && bulk == null, config.isContinueOnError(), journal);
+                        applied = true;
+                    } finally {
+                        if (bulk != null && applied)
+                            bulk.finish();
+                        else if (bulk != null)
+                            bulk.abort();
+                    }
+                    if (bulk != null && config.isCommit())
+                        crud.commit();
                     if (config.isUndolog())
                         writeUndoLogs(change.table(), sqlUndoStmt);
                 }
+                if (journal != null)
+                    journal.complete();
             } catch (SQLException e) {
                 output.error("   Error: " + e.getMessage());
                 e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                output.error("   Import interrupted");
             }
         else if (reference.isEmpty())
             output.error("   Reference is empty but table still exists!");
@@ -202,8 +518,20 @@ public class Starter {
             output.error("   Error: Table " + reference.getTableName() + " does not exist!");
     }
 
+    private static ImportJournal journal(File file, Snapshot reference, Config config, OutPut output) throws IOException {
+        if (config.getCommitRows() <= 0 && config.getCommitSeconds() <= 0)
+            return null;
+        if (!config.isCommit()) {
+            output.userln("   Commit interval ignored, nothing is committed without --commit");
+            return null;
+        }
+        if (reference.getTable().primaryKey == null)
+            return null;
+        return ImportJournal.open(new File("."), reference, file, config.getCommitRows(), config.getCommitSeconds());
+    }
+
     private static void writeUndoLogs(String table, List<String> sqlUndoStmt) throws IOException {
-        File undo = new File("." + File.separator + table.toLowerCase() + "_" + EXPORT_DATE_FORMAT.format(new Date()) + ".undo");
+        File undo = new File("." + File.separator + table.toLowerCase() + "_" + EXPORT_DATE_FORMAT.get().format(new Date()) + ".undo");
         Writer writer = new BufferedWriter(new FileWriter(undo));
         writer.write("-- Undo logs for table " + table + "\n");
         for (String stmt : sqlUndoStmt)
@@ -211,4 +539,8 @@ public class Starter {
         writer.close();
     }
 
+    private interface FileContent<T> {
+        T write(OutputStream out) throws SQLException, IOException;
+    }
+
 }
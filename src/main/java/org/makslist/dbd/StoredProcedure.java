@@ -8,11 +8,11 @@ public class StoredProcedure {
     public static final String GET_ALL = "SELECT OBJECT_NAME FROM ALL_PROCEDURES WHERE OWNER = UPPER(?) AND OBJECT_NAME LIKE UPPER(?) AND PROCEDURE_NAME IS NULL";
     public static final String GET_DDL = "SELECT OBJECT_NAME, OBJECT_TYPE, DBMS_METADATA.GET_DDL(OBJECT_TYPE, OBJECT_NAME, OWNER) FROM (SELECT * FROM ALL_PROCEDURES WHERE OWNER = UPPER(?) AND OBJECT_NAME = UPPER(?) AND PROCEDURE_NAME IS NULL)";
 
-    public static List<String> all(String owner, String pattern, Connection conn) throws SQLException {
+    public static List<String> all(String owner, String pattern, Connection conn, int fetchSize) throws SQLException {
         try (PreparedStatement stmt = conn.prepareStatement(GET_ALL)) {
             stmt.setString(1, owner);
             stmt.setString(2, pattern);
-            stmt.setFetchSize(1000);
+            stmt.setFetchSize(fetchSize);
             ResultSet rs = stmt.executeQuery();
             List<String> procedureNames = new ArrayList<>();
             while (rs.next())
@@ -25,7 +25,7 @@ public class StoredProcedure {
         try (PreparedStatement stmt = conn.prepareStatement(GET_DDL)) {
             stmt.setString(1, owner);
             stmt.setString(2, name);
-            stmt.setFetchSize(1000);
+            stmt.setFetchSize(1);
             ResultSet rs = stmt.executeQuery();
             if (rs.next())
                 return new StoredProcedure(rs.getString(1), rs.getString(2), rs.getString(3));
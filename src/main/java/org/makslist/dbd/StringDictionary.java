@@ -0,0 +1,35 @@
+package org.makslist.dbd;
+
+import java.util.*;
+
+/**
+ * Deduplicates the values of one column. Gives up once the column turns out to have too many distinct
+ * values or too few repeats to be worth it, and then passes values through unchanged.
+ */
+public class StringDictionary {
+
+    static final int MAX_DISTINCT = 65536;
+    static final int MAX_LENGTH = 64;
+    static final int SAMPLE = 10_000;
+
+    private Map<String, String> values = new HashMap<>();
+    private long lookups;
+    private long hits;
+
+    public String dedup(String value) {
+        if (values == null || value == null || value.length() > MAX_LENGTH)
+            return value;
+
+        String known = values.putIfAbsent(value, value);
+        if (known != null)
+            hits++;
+        if (values.size() > MAX_DISTINCT || (++lookups == SAMPLE && hits * 2 < lookups))
+            values = null;
+        return known != null ? known : value;
+    }
+
+    public boolean isActive() {
+        return values != null;
+    }
+
+}
@@ -17,9 +17,14 @@ public class TableMeta {
     List<Column> columns = null;
     PrimaryKey primaryKey = null;
     List<ForeignKey> foreignKeys = null;
+    List<Index> indexes = null;
 
     protected Map<String, Integer> columnIndex = null;
 
+    // Resolved on first use, reset whenever columns or primary key change.
+    private Binder[] binders;
+    private int[] nonPkIndices;
+
     public TableMeta() {
     }
 
@@ -50,6 +55,13 @@ public class TableMeta {
         return columns;
     }
 
+    public void setColumns(List<Column> columns) {
+        this.columns = columns;
+        this.columnIndex = columns.stream().collect(Collectors.toMap(c -> c.name, c -> c.position - 1));
+        this.binders = null;
+        this.nonPkIndices = null;
+    }
+
     @SuppressWarnings("unused")
     public PrimaryKey getPrimaryKey() {
         return primaryKey;
@@ -57,7 +69,9 @@ public class TableMeta {
 
     public void setPrimaryKey(PrimaryKey primaryKey) {
         this.primaryKey = primaryKey;
-        this.primaryKey.setBackref(this);
+        if (primaryKey != null)
+            primaryKey.setBackref(this);
+        this.nonPkIndices = null;
     }
 
     @SuppressWarnings("unused")
@@ -65,11 +79,48 @@ public class TableMeta {
         return foreignKeys;
     }
 
+    /**
+     * Indexes as found in the database, only loaded on demand by {@link Crud#loadIndexes(TableMeta)}.
+     */
+    @JsonIgnore
+    public List<Index> getIndexes() {
+        return indexes;
+    }
+
+    public void setIndexes(List<Index> indexes) {
+        this.indexes = indexes;
+    }
+
     @JsonIgnore
     public Stream<Column> getPkColumns() {
         return primaryKey.columnNames.stream().flatMap(n -> columns.stream().filter(c -> n.equals(c.name)));
     }
 
+    @JsonIgnore
+    public List<Column> getKeyColumns() {
+        return Arrays.stream(primaryKey.getPkIndices()).mapToObj(columns::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Parameter binder per column, by column index.
+     */
+    Binder[] binders() {
+        if (binders == null)
+            binders = columns.stream().map(c -> Binder.of(c.datatype)).toArray(Binder[]::new);
+        return binders;
+    }
+
+    /**
+     * Indices of the columns not part of the primary key, in column order.
+     */
+    int[] nonPkIndices() {
+        if (nonPkIndices == null) {
+            int[] pkIndices = primaryKey != null ? primaryKey.getPkIndices() : new int[0];
+            nonPkIndices = IntStream.range(0, columns.size()).filter(i -> Arrays.stream(pkIndices).noneMatch(pk -> pk == i)).toArray();
+        }
+        return nonPkIndices;
+    }
+
     @SuppressWarnings("unused")
     public static class Column {
 
@@ -273,6 +324,36 @@ public class TableMeta {
 
     }
 
+    public static class Index {
+        String name;
+        boolean unique;
+        List<String> columns;
+
+        public Index(String name, boolean unique, List<String> columns) {
+            this.name = name;
+            this.unique = unique;
+            this.columns = columns;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isUnique() {
+            return unique;
+        }
+
+        // Column names, followed by " desc" for descending ones.
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String createSql(String table) {
+            return "create " + (unique ? "unique " : "") + "index " + name + " on " + table + " (" + String.join(", ", columns) + ")";
+        }
+
+    }
+
     public String createSql() {
         return "create table " + name + " (" + columns.stream().map(c -> c.name + " " + c.getTypeSql()).
                 collect(Collectors.joining(", ")) + ", primary key (" + String.join(", ", primaryKey.columnNames) + "))";
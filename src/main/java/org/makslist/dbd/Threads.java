@@ -0,0 +1,14 @@
+package org.makslist.dbd;
+
+import java.util.concurrent.*;
+
+final class Threads {
+
+    private Threads() {
+    }
+
+    static ExecutorService newTableExecutor(int connections) {
+        return Executors.newFixedThreadPool(connections);
+    }
+
+}
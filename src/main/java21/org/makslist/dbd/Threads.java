@@ -0,0 +1,15 @@
+package org.makslist.dbd;
+
+import java.util.concurrent.*;
+
+final class Threads {
+
+    private Threads() {
+    }
+
+    static ExecutorService newTableExecutor(int connections) {
+        // one virtual thread per table, concurrency is capped by the idle connections of the pool
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+}
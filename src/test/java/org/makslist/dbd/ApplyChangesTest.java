@@ -75,6 +75,21 @@ public class ApplyChangesTest {
         }
     }
 
+    @Test
+    void applyInsertWithTimeAtFullMinute() {
+        try {
+            crud.execute("update tab set col_time = time '10:00:00' where pk_char = '222'");
+            Snapshot reference = crud.fetch("tab");
+            Assertions.assertEquals("10:00", reference.getRecords().stream().filter(r -> "222".equals(r.column("pk_char"))).findFirst().get().column("col_time"));
+            crud.execute("delete tab where pk_char = '222'");
+
+            crud.apply(reference.delta(crud.fetch("tab"), Collections.emptyList()), false, false);
+            Assertions.assertTrue(reference.delta(crud.fetch("tab"), Collections.emptyList()).isEmpty());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Test
     void applyUpdate() {
         try {
@@ -96,4 +111,36 @@ public class ApplyChangesTest {
         }
     }
 
+    @Test
+    void applyUpdateSetsOnlyChangedColumns() {
+        try {
+            Snapshot reference = crud.fetch("tab");
+            crud.execute("update tab set col_char = 'changed data', col_date = date '2000-01-01' where pk_char = '222'");
+            crud.execute("update tab set col_char = 'other data' where pk_char = '111' and pk_int = 2");
+
+            ChangeSet change = reference.delta(crud.fetch("tab"), Collections.singletonList("col_date"));
+            Assertions.assertEquals(2, change.updateRecs().size());
+            Assertions.assertEquals(Arrays.asList(
+                    "update tab set col_char = 'test123' where pk_char = '111' and pk_int = 2;",
+                    "update tab set col_char = 'test123' where pk_char = '222' and pk_int = 1;"), sorted(change.sqlApplyStmt()));
+            Assertions.assertEquals(Arrays.asList(
+                    "update tab set col_char = 'changed data' where pk_char = '222' and pk_int = 1;",
+                    "update tab set col_char = 'other data' where pk_char = '111' and pk_int = 2;"), sorted(change.sqlUndoStmt()));
+            crud.apply(change, false, false);
+
+            Snapshot applied = crud.fetch("tab", "pk_char = '222'");
+            Assertions.assertEquals("test123", applied.getRecords().get(0).column("col_char"));
+            Assertions.assertEquals("2000-01-01", applied.getRecords().get(0).column("col_date"));
+            Assertions.assertTrue(reference.delta(crud.fetch("tab"), Collections.singletonList("col_date")).isEmpty());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<String> sorted(List<String> stmts) {
+        List<String> sorted = new ArrayList<>(stmts);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
 }
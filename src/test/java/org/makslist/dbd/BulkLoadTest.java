@@ -0,0 +1,85 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.stream.*;
+
+public class BulkLoadTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table bulk_parent (id integer primary key)");
+            crud.execute("create table bulk_child (id integer primary key, parent_id integer, val integer, constraint fk_bulk_parent foreign key (parent_id) references bulk_parent (id))");
+            crud.execute("create index idx_bulk_val on bulk_child (val)");
+            for (int i = 1; i <= 5; i++)
+                crud.execute("insert into bulk_parent (id) values (" + i + ")");
+            for (int i = 1; i <= 50; i++)
+                crud.execute("insert into bulk_child (id, parent_id, val) values (" + i + ", " + (i % 5 + 1) + ", " + i + ")");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table bulk_child");
+            crud.execute("drop table bulk_parent");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void rebuildsIndexesAfterLoad() throws SQLException {
+        Snapshot reference = crud.fetch("bulk_child");
+        crud.execute("delete bulk_child where id > 10");
+
+        BulkLoad bulk = crud.bulkLoad("bulk_child");
+        Assertions.assertEquals(Collections.singletonList("idx_bulk_val"), bulk.getIndexes().stream().map(TableMeta.Index::getName).collect(Collectors.toList()));
+        Assertions.assertFalse(indexNames().contains("idx_bulk_val"));
+
+        crud.apply(crud.delta(reference, Collections.emptyList()), false, false);
+        bulk.finish();
+
+        Assertions.assertTrue(indexNames().contains("idx_bulk_val"));
+        Assertions.assertTrue(crud.delta(reference, Collections.emptyList()).isEmpty());
+        Assertions.assertThrows(SQLException.class, () -> crud.execute("insert into bulk_child (id, parent_id, val) values (100, 99, 1)"));
+    }
+
+    @Test
+    void validatesForeignKeysWhenFinished() throws SQLException {
+        BulkLoad bulk = crud.bulkLoad("bulk_child");
+        crud.execute("insert into bulk_child (id, parent_id, val) values (100, 99, 1)");
+        Assertions.assertThrows(SQLException.class, bulk::finish);
+        Assertions.assertTrue(indexNames().contains("idx_bulk_val"));
+        Assertions.assertEquals(0, crud.count("select count(*) from bulk_child where id = 100"));
+        Assertions.assertThrows(SQLException.class, () -> crud.execute("insert into bulk_child (id, parent_id, val) values (101, 99, 1)"));
+    }
+
+    @Test
+    void abortRollsBackBeforeRebuild() throws SQLException {
+        Snapshot reference = crud.fetch("bulk_child");
+        crud.execute("delete bulk_child where id > 10");
+        crud.commit();
+
+        BulkLoad bulk = crud.bulkLoad("bulk_child");
+        crud.apply(crud.delta(reference, Collections.emptyList()), false, false);
+        bulk.abort();
+
+        Assertions.assertEquals(10, crud.fetch("bulk_child").getRecords().size());
+        Assertions.assertTrue(indexNames().contains("idx_bulk_val"));
+    }
+
+    private List<String> indexNames() throws SQLException {
+        return crud.loadIndexes(crud.tableMetaData("bulk_child")).stream().map(TableMeta.Index::getName).collect(Collectors.toList());
+    }
+
+}
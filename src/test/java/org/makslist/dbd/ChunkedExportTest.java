@@ -0,0 +1,112 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.databind.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.stream.*;
+
+public class ChunkedExportTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table tab (pk_char varchar(3), col_char varchar(30), col_date date, pk_int integer, col_time time default current_time, primary key (pk_char, pk_int))");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test123', current_date, 1)");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test123', current_date, 2)");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test123', current_date, 3)");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('222', 'test123', current_date, 1)");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('222', 'test123', current_date, 2)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table tab");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void exportInPages() {
+        try {
+            File dir = Files.createTempDirectory("chunks").toFile();
+            ChunkedExport export = ChunkedExport.open(dir, "tab", "tab", null, 2);
+            export.run(crud);
+            Assertions.assertTrue(export.isComplete());
+            Assertions.assertEquals(5, export.getRowCount());
+            Assertions.assertEquals(3, export.getChunks().size());
+
+            for (String chunk : export.getChunks()) {
+                Snapshot reference = Snapshot.read(new File(dir, chunk));
+                Assertions.assertTrue(crud.delta(reference, Collections.emptyList()).isEmpty());
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void resumeFromManifest() {
+        try {
+            File dir = Files.createTempDirectory("chunks").toFile();
+            ChunkedExport export = ChunkedExport.open(dir, "tab", "tab", null, 2);
+            export.run(crud);
+
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('333', 'test123', current_date, 1)");
+            ChunkedExport resumed = ChunkedExport.open(dir, "tab", "tab", null, 2);
+            Assertions.assertTrue(resumed.isComplete());
+            Assertions.assertEquals(Arrays.asList("222", "2"), resumed.getLastKey());
+            Assertions.assertThrows(RuntimeException.class, () -> ChunkedExport.open(dir, "tab", "tab", "pk_int = 1", 2));
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void resumeAfterInterruptedExport() {
+        try {
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('a''b', 'quoted', current_date, 1)");
+            File dir = Files.createTempDirectory("chunks").toFile();
+            ChunkedExport export = ChunkedExport.open(dir, "tab", "tab", null, 2);
+            export.run(crud);
+            Assertions.assertEquals(3, export.getChunks().size());
+
+            // as if the export had stopped after the first chunk
+            export.chunks.subList(1, export.chunks.size()).clear();
+            export.lastKey = Arrays.asList("111", "2");
+            export.rowCount = 2;
+            export.complete = false;
+            new ObjectMapper().writeValue(new File(dir, "tab." + ChunkedExport.MANIFEST_EXTENSION), export);
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('000', 'before', current_date, 1)");
+
+            ChunkedExport resumed = ChunkedExport.open(dir, "tab", "tab", null, 2);
+            Assertions.assertFalse(resumed.isComplete());
+            resumed.run(crud);
+            Assertions.assertTrue(resumed.isComplete());
+            Assertions.assertEquals(6, resumed.getRowCount());
+            Assertions.assertEquals(Arrays.asList("a'b", "1"), resumed.getLastKey());
+
+            Snapshot second = Snapshot.read(new File(dir, resumed.getChunks().get(1)));
+            Assertions.assertEquals(Arrays.asList("111", "3"), second.getRecords().get(0).key().columns().collect(Collectors.toList()));
+            for (String chunk : resumed.getChunks().subList(1, resumed.getChunks().size())) {
+                Snapshot reference = Snapshot.read(new File(dir, chunk));
+                Assertions.assertTrue(crud.delta(reference, Collections.emptyList()).isEmpty());
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class CrudPoolTest {
+
+    CrudPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = CrudPool.open(2, () -> Crud.connectH2(false));
+        try {
+            for (String table : Arrays.asList("tab_a", "tab_b", "tab_c")) {
+                pool.primary().execute("create table " + table + " (pk integer, col_char varchar(30), primary key (pk))");
+                pool.primary().execute("insert into " + table + " (pk, col_char) values (1, 'test123')");
+                pool.primary().execute("insert into " + table + " (pk, col_char) values (2, 'test123')");
+            }
+            pool.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            for (String table : Arrays.asList("tab_a", "tab_b", "tab_c"))
+                pool.primary().execute("drop table " + table);
+            pool.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void fetchTablesInParallel() throws InterruptedException {
+        AtomicInteger rows = new AtomicInteger();
+        Set<Crud> used = ConcurrentHashMap.newKeySet();
+        pool.forEach(Arrays.asList("tab_a", "tab_b", "tab_c"), (table, crud) -> {
+            used.add(crud);
+            rows.addAndGet(crud.fetch(table).getRecords().size());
+        });
+        Assertions.assertEquals(6, rows.get());
+        Assertions.assertTrue(used.size() <= pool.size());
+    }
+
+    @Test
+    void failingTableDoesNotStopOthers() throws InterruptedException {
+        AtomicInteger rows = new AtomicInteger();
+        pool.forEach(Arrays.asList("tab_a", "missing", "tab_c"), (table, crud) -> rows.addAndGet(crud.fetch(table).getRecords().size()));
+        Assertions.assertEquals(4, rows.get());
+    }
+
+}
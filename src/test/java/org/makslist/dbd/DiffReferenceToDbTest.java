@@ -96,6 +96,90 @@ public class DiffReferenceToDbTest {
         }
     }
 
+    @Test
+    void diffByKeysFirst() {
+        try {
+            Snapshot reference = crud.fetch("tab", "pk_char = '111'");
+            crud.execute("delete tab where pk_char = '111' and pk_int = '1'");
+            crud.execute("update tab set col_char = 'changed data' where pk_char = '111' and pk_int = 2");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test456', current_date, 4)");
+
+            ChangeSet change = crud.deltaByKeys(reference, Collections.emptyList());
+            Assertions.assertEquals(1, change.insertRecs().size());
+            Assertions.assertEquals(1, change.updateRecs().size());
+            Assertions.assertEquals(1, change.deleteRecs().size());
+            Assertions.assertNull(change.deleteRecs().get(0).column("col_char"));
+
+            crud.apply(change, false, false);
+            Assertions.assertTrue(crud.deltaByKeys(reference, Collections.emptyList()).isEmpty());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void diffByHash() {
+        try {
+            Snapshot reference = crud.fetch("tab", "pk_char = '111'");
+            crud.execute("delete tab where pk_char = '111' and pk_int = '1'");
+            crud.execute("update tab set col_char = 'changed data' where pk_char = '111' and pk_int = 2");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test456', current_date, 4)");
+
+            ChangeSet change = crud.deltaByHash(reference, Collections.emptyList());
+            Assertions.assertEquals(1, change.insertRecs().size());
+            Assertions.assertEquals(1, change.updateRecs().size());
+            Assertions.assertEquals(1, change.deleteRecs().size());
+
+            crud.apply(change, false, false);
+            Assertions.assertTrue(crud.deltaByHash(reference, Collections.emptyList()).isEmpty());
+            Assertions.assertTrue(crud.deltaByHash(reference, Collections.singletonList("col_time")).isEmpty());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void rowHashMatchesDatabase() {
+        try {
+            crud.execute("create table hashed (id integer primary key, col_num numeric(10,2), col_ts timestamp, col_time time, col_bool boolean, col_char varchar(30), col_date date)");
+            crud.execute("insert into hashed values (1, 1.5, timestamp '2024-02-03 04:05:06.07', time '10:11:12', true, 'täst', date '2024-02-03')");
+            crud.execute("insert into hashed values (2, -0.25, timestamp '2024-02-03 04:05:06.789', time '00:00:00', false, '', date '1999-12-31')");
+            crud.execute("insert into hashed values (3, null, null, null, null, null, null)");
+
+            Snapshot snapshot = crud.fetch("hashed");
+            RowHash hash = RowHash.of("H2", snapshot.getTable(), null);
+            Assertions.assertNotNull(hash);
+            Assertions.assertNotNull(RowHash.of("Oracle", snapshot.getTable(), null));
+            for (Snapshot.Record record : snapshot.getRecords())
+                Assertions.assertEquals(1, crud.count("select count(*) from hashed where id = " + record.column("id") + " and " + hash.sql() + " = X'" + hash.hash(record) + "'"), record.toString());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                crud.execute("drop table hashed");
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    @Test
+    void rowHashOfWideRowsNotOnOracle() {
+        try {
+            crud.execute("create table wide_hashed (id integer primary key, col_a varchar(2000), col_b varchar(2000), col_c varchar(30))");
+            TableMeta table = crud.tableMetaData("wide_hashed");
+            Assertions.assertNull(RowHash.of("Oracle", table, null));
+            Assertions.assertNotNull(RowHash.of("Oracle", table, new boolean[]{true, true, false, true}));
+            Assertions.assertNotNull(RowHash.of("H2", table, null));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                crud.execute("drop table wide_hashed");
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
     @Test
     void diffWithIgnoreColumn() {
         try {
@@ -111,4 +195,64 @@ public class DiffReferenceToDbTest {
         }
     }
 
+    @Test
+    void ignoredColumnsAreNotFetched() {
+        try {
+            Snapshot reference = crud.fetch("tab", "pk_char = '111'");
+            crud.execute("update tab set col_char = 'changed data' where pk_char = '111' and pk_int = 2");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test456', current_date, 4)");
+
+            ChangeSet change = crud.delta(reference, Collections.singletonList("col_char"));
+            Assertions.assertEquals(0, change.updateRecs().size());
+            Assertions.assertEquals(1, change.deleteRecs().size());
+            Assertions.assertNull(change.deleteRecs().get(0).column("col_char"));
+            Assertions.assertNotNull(change.deleteRecs().get(0).column("col_date"));
+
+            change = crud.delta(reference, Collections.singletonList("col_char"), true);
+            Assertions.assertEquals("test456", change.deleteRecs().get(0).column("col_char"));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void countDelta() {
+        try {
+            Snapshot reference = crud.fetch("tab", "pk_char = '111'");
+            crud.execute("delete tab where pk_char = '111' and pk_int = '1'");
+            crud.execute("update tab set col_char = 'changed data' where pk_char = '111' and pk_int = 2");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test456', current_date, 4)");
+            crud.execute("insert into tab (pk_char, col_char, col_date, pk_int) values ('111', 'test456', current_date, 5)");
+
+            for (boolean byHash : new boolean[]{false, true}) {
+                DeltaCount count = crud.countDelta(reference, Collections.emptyList(), byHash);
+                Assertions.assertEquals(1, count.getInserts());
+                Assertions.assertEquals(1, count.getUpdates());
+                Assertions.assertEquals(2, count.getDeletes());
+            }
+            Assertions.assertEquals(0, crud.countDelta(reference, Collections.singletonList("col_char"), false).getUpdates());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void countDeltaWithMovedColumn() {
+        try {
+            Snapshot reference = crud.fetch("tab", "pk_char = '111'");
+            crud.execute("alter table tab drop column col_char");
+            crud.execute("alter table tab add column col_char varchar(30) default 'test123'");
+
+            ChangeSet change = crud.delta(reference, Collections.emptyList());
+            for (boolean byHash : new boolean[]{false, true}) {
+                DeltaCount count = crud.countDelta(reference, Collections.emptyList(), byHash);
+                Assertions.assertEquals(change.insertRecs().size(), count.getInserts());
+                Assertions.assertEquals(change.updateRecs().size(), count.getUpdates());
+                Assertions.assertEquals(change.deleteRecs().size(), count.getDeletes());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
@@ -0,0 +1,87 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class ExternalSortTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table sorted (pk_char varchar(3), pk_int integer, col_char varchar(30), primary key (pk_char, pk_int))");
+            for (int i = 0; i < 1000; i++) {
+                int key = (i * 7919) % 1000;
+                crud.execute("insert into sorted (pk_char, pk_int, col_char) values ('k" + (key % 3) + "', " + key + ", " + (key % 5 == 0 ? "null" : "'value " + key + "'") + ")");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table sorted");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void mergesSpilledRunsInKeyOrder() throws IOException, SQLException {
+        TableMeta table = crud.tableMetaData("sorted");
+        File file = Files.createTempFile("sorted", ".snapshot").toFile();
+        try (ExternalSort sort = new ExternalSort(table, 64)) {
+            crud.scan(table, null, null, sort::add);
+            Assertions.assertEquals(15, sort.getRuns());
+            try (SnapshotWriter writer = new SnapshotWriter(Files.newOutputStream(file.toPath()), new Snapshot(table, null), null)) {
+                sort.writeTo(writer);
+            }
+        }
+
+        Snapshot snapshot = Snapshot.read(file);
+        List<Snapshot.Record> records = snapshot.getRecords();
+        Assertions.assertEquals(1000, records.size());
+        Comparator<String[]> order = ExternalSort.keyOrder(table);
+        for (int i = 1; i < records.size(); i++)
+            Assertions.assertTrue(order.compare(values(table, records.get(i - 1)), values(table, records.get(i))) < 0);
+        Assertions.assertEquals("k0", records.get(0).column("pk_char"));
+        Assertions.assertEquals("0", records.get(0).column("pk_int"));
+        Assertions.assertEquals("3", records.get(1).column("pk_int"));
+        Assertions.assertTrue(crud.delta(snapshot, Collections.emptyList()).isEmpty());
+        Files.delete(file.toPath());
+    }
+
+    @Test
+    void ordersNumericKeysByValue() throws SQLException {
+        TableMeta table = crud.tableMetaData("sorted");
+        Comparator<String[]> order = ExternalSort.keyOrder(table);
+        Assertions.assertTrue(order.compare(new String[]{"k1", "9", null}, new String[]{"k1", "10", null}) < 0);
+        Assertions.assertTrue(order.compare(new String[]{"k0", "10", null}, new String[]{"k1", "9", null}) < 0);
+        Assertions.assertTrue(order.compare(new String[]{null, "10", null}, new String[]{"k0", "9", null}) < 0);
+        Assertions.assertEquals(0, order.compare(new String[]{"k1", "9", "a"}, new String[]{"k1", "9", "b"}));
+    }
+
+    @Test
+    void exportsSortedSnapshot() throws IOException, SQLException {
+        File file = Files.createTempFile("sorted", ".snapshot").toFile();
+        Assertions.assertEquals(333, crud.exportSorted("sorted", "pk_char = 'k1'", Files.newOutputStream(file.toPath()), -1));
+        Snapshot snapshot = Snapshot.read(file);
+        Assertions.assertEquals("1", snapshot.getRecords().get(0).column("pk_int"));
+        Assertions.assertEquals("4", snapshot.getRecords().get(1).column("pk_int"));
+        Files.delete(file.toPath());
+    }
+
+    private static String[] values(TableMeta table, Snapshot.Record record) {
+        return table.columns.stream().map(c -> record.column(c.name)).toArray(String[]::new);
+    }
+
+}
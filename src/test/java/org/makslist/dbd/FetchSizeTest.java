@@ -0,0 +1,89 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+
+public class FetchSizeTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table narrow (pk integer, primary key (pk))");
+            crud.execute("create table wide (pk integer, col_char varchar(4000), col_clob clob, primary key (pk))");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table narrow");
+            crud.execute("drop table wide");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void widerRowsFetchFewerRows() throws SQLException {
+        FetchSize fetchSize = new FetchSize(Collections.emptyMap(), 0);
+        int narrow = fetchSize.rows(crud.tableMetaData("narrow"));
+        int wide = fetchSize.rows(crud.tableMetaData("wide"));
+        Assertions.assertTrue(narrow > wide);
+        Assertions.assertTrue(wide >= FetchSize.MIN_ROWS);
+        Assertions.assertTrue(narrow <= FetchSize.MAX_ROWS);
+    }
+
+    @Test
+    void slowerRoundTripFetchesMoreRows() throws SQLException {
+        TableMeta wide = crud.tableMetaData("wide");
+        int local = new FetchSize(Collections.emptyMap(), 100_000).rows(wide);
+        int remote = new FetchSize(Collections.emptyMap(), 20_000_000).rows(wide);
+        Assertions.assertTrue(remote > local);
+    }
+
+    @Test
+    void overrideFromProperties() throws SQLException {
+        Properties prop = new Properties();
+        prop.setProperty("fetchSize.WIDE", "7");
+        prop.setProperty("threads", "4");
+        FetchSize fetchSize = new FetchSize(FetchSize.overrides(prop), 0);
+        Assertions.assertEquals(7, fetchSize.rows(crud.tableMetaData("wide")));
+
+        crud.setFetchSizes(FetchSize.overrides(prop));
+        crud.execute("insert into wide (pk, col_char) values (1, 'abc')");
+        Assertions.assertEquals(1, crud.fetch("wide").getRecords().size());
+    }
+
+    @Test
+    void overrideAppliesToProjectedQueries() throws SQLException {
+        Properties prop = new Properties();
+        prop.setProperty("fetchSize.wide", "7");
+        crud.setFetchSizes(FetchSize.overrides(prop));
+        for (int i = 0; i < 20; i++)
+            crud.execute("insert into wide (pk, col_char) values (" + i + ", 'abc')");
+        Snapshot reference = crud.fetch("wide");
+
+        // round trips are counted as 1 + rows / stmt.getFetchSize()
+        Metrics.Table metrics = Metrics.getInstance().table("wide");
+        long before = metrics.getRoundTrips();
+        TableMeta wide = crud.tableMetaData("wide");
+        long metaData = metrics.getRoundTrips() - before;
+
+        before = metrics.getRoundTrips();
+        Assertions.assertTrue(crud.delta(reference, Collections.singletonList("COL_CLOB"), false).isEmpty());
+        Assertions.assertEquals(metaData + 1 + 20 / 7, metrics.getRoundTrips() - before);
+
+        before = metrics.getRoundTrips();
+        crud.fetchKeys(wide, null);
+        Assertions.assertEquals(1 + 20 / 7, metrics.getRoundTrips() - before);
+    }
+
+}
@@ -0,0 +1,72 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class GroupedExportTest {
+
+    Crud crud;
+    File path;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table grouped (tenant varchar(10), id integer, col_char varchar(30), primary key (tenant, id))");
+            for (int i = 0; i < 300; i++)
+                crud.execute("insert into grouped (tenant, id, col_char) values ('t" + (i % 7) + "', " + i + ", 'value " + i + "')");
+            path = Files.createTempDirectory("grouped").toFile();
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table grouped");
+            crud.close();
+            for (File file : Objects.requireNonNull(path.listFiles()))
+                Files.delete(file.toPath());
+            Files.delete(path.toPath());
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void reopensEvictedGroups() throws IOException, SQLException {
+        Snapshot snapshot = crud.fetch("grouped");
+        try (GroupedExport export = new GroupedExport(snapshot, Collections.singletonList("tenant"), path, 2)) {
+            for (Snapshot.Record record : snapshot.getRecords())
+                export.add(record.columns().toArray(String[]::new));
+            List<File> files = export.finish();
+            Assertions.assertEquals(7, files.size());
+            Assertions.assertEquals(300, export.getRowCount());
+        }
+
+        Snapshot group = Snapshot.read(new File(path, "grouped_t3.snapshot"));
+        Assertions.assertEquals(43, group.getRecords().size());
+        Assertions.assertEquals("tenant = 't3'", group.getWhere());
+        Assertions.assertTrue(group.getRecords().stream().allMatch(r -> "t3".equals(r.column("tenant"))));
+        Assertions.assertTrue(crud.delta(group, Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void streamsGroupsFromResultSet() throws IOException, SQLException {
+        GroupedExport export = crud.exportGrouped("grouped", "id < 100", Collections.singletonList("TENANT"), path);
+        Assertions.assertEquals(100, export.getRowCount());
+        Assertions.assertEquals(7, export.getGroupCount());
+        Assertions.assertEquals(7, Objects.requireNonNull(path.listFiles()).length);
+
+        Snapshot group = Snapshot.read(new File(path, "grouped_t0.snapshot"));
+        Assertions.assertEquals(15, group.getRecords().size());
+        Assertions.assertEquals("id < 100 and TENANT = 't0'", group.getWhere());
+        Assertions.assertTrue(crud.delta(group, Collections.emptyList()).isEmpty());
+    }
+
+}
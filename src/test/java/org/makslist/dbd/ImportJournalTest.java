@@ -0,0 +1,85 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class ImportJournalTest {
+
+    Crud crud;
+    File path;
+    File file;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table journaled (id integer primary key, val integer)");
+            for (int i = 1; i <= 10; i++)
+                crud.execute("insert into journaled (id, val) values (" + i + ", " + (i == 7 ? 500 : i) + ")");
+            path = Files.createTempDirectory("journal").toFile();
+            file = new File(path, "journaled.snapshot");
+            crud.fetch("journaled").export(Files.newOutputStream(file.toPath()));
+            crud.execute("delete journaled");
+            crud.execute("alter table journaled add constraint val_limit check (val < 100)");
+            crud.commit();
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table journaled");
+            crud.close();
+            for (File f : Objects.requireNonNull(path.listFiles()))
+                Files.delete(f.toPath());
+            Files.delete(path.toPath());
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void resumesWithRemainingDelta() throws IOException, SQLException {
+        Snapshot reference = Snapshot.read(file);
+        ImportJournal journal = ImportJournal.open(path, reference, file, 4, -1);
+        ChangeSet change = crud.delta(reference, Collections.emptyList());
+        Assertions.assertThrows(RuntimeException.class, () -> crud.apply(change, true, false, journal));
+        crud.rollback();
+        Assertions.assertEquals(1, journal.commits());
+        Assertions.assertEquals(4, crud.fetch("journaled").getRecords().size());
+
+        File journalFile = new File(path, "journaled." + ImportJournal.EXTENSION);
+        Assertions.assertTrue(journalFile.exists());
+
+        crud.execute("alter table journaled drop constraint val_limit");
+        crud.execute("delete journaled where id = 2");
+        ImportJournal resumed = ImportJournal.open(path, reference, file, 4, -1);
+        Assertions.assertEquals(Collections.singletonList("4"), resumed.getLastKeys().get("insert"));
+        ChangeSet remaining = crud.delta(reference, Collections.emptyList());
+        Assertions.assertEquals(7, remaining.insertRecs().size());
+        crud.apply(remaining, true, false, resumed);
+        resumed.complete();
+
+        Snapshot imported = crud.fetch("journaled");
+        Assertions.assertEquals(10, imported.getRecords().size());
+        Assertions.assertTrue(imported.getRecords().stream().anyMatch(r -> "2".equals(r.column("id"))));
+        Assertions.assertFalse(journalFile.exists());
+    }
+
+    @Test
+    void commitsInIntervalsAndOrdersKeys() throws IOException, SQLException {
+        crud.execute("alter table journaled drop constraint val_limit");
+        Snapshot reference = Snapshot.read(file);
+        ImportJournal journal = ImportJournal.open(path, reference, file, 3, -1);
+        crud.apply(crud.delta(reference, Collections.emptyList()), true, false, journal);
+        Assertions.assertEquals(4, journal.commits());
+        Assertions.assertEquals(Collections.singletonList("10"), journal.getLastKeys().get("insert"));
+    }
+
+}
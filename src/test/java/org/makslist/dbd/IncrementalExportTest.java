@@ -0,0 +1,69 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class IncrementalExportTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table tab (pk_char varchar(3), col_char varchar(30), pk_int integer, ver integer, primary key (pk_char, pk_int))");
+            crud.execute("insert into tab (pk_char, col_char, pk_int, ver) values ('111', 'test123', 1, 1)");
+            crud.execute("insert into tab (pk_char, col_char, pk_int, ver) values ('111', 'test123', 2, 2)");
+            crud.execute("insert into tab (pk_char, col_char, pk_int, ver) values ('111', 'test123', 3, 3)");
+            crud.execute("insert into tab (pk_char, col_char, pk_int, ver) values ('222', 'test123', 1, 4)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table tab");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void initialExportSetsHighWaterMark() {
+        try {
+            Snapshot snapshot = crud.fetchIncremental("tab", null, "ver", null);
+            Assertions.assertEquals(4, snapshot.getRecords().size());
+            Assertions.assertEquals("ver", snapshot.getTrackColumn());
+            Assertions.assertEquals("4", snapshot.getHighWaterMark());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void mergeChangesAndDeletes() {
+        try {
+            File file = Files.createTempFile("tab", ".snapshot").toFile();
+            crud.fetchIncremental("tab", null, "ver", null).export(Files.newOutputStream(file.toPath()));
+
+            crud.execute("update tab set col_char = 'changed data', ver = 5 where pk_char = '111' and pk_int = 2");
+            crud.execute("insert into tab (pk_char, col_char, pk_int, ver) values ('222', 'test456', 2, 6)");
+            crud.execute("delete tab where pk_char = '111' and pk_int = 1");
+
+            Snapshot merged = crud.fetchIncremental("tab", null, "ver", Snapshot.read(file));
+            Assertions.assertEquals(4, merged.getRecords().size());
+            Assertions.assertEquals("6", merged.getHighWaterMark());
+            Assertions.assertTrue(merged.delta(crud.fetch("tab"), Collections.emptyList()).isEmpty());
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
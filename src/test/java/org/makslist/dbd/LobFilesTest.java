@@ -0,0 +1,103 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LobFilesTest {
+
+    Crud crud;
+    File dir;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            dir = Files.createTempDirectory("lobs").toFile();
+            crud.execute("create table lobtypes (pk varchar(3), col_clob clob, col_blob blob, primary key (pk))");
+            crud.execute("insert into lobtypes (pk, col_clob, col_blob) values ('abc', 'some text', X'0102030405')");
+            crud.execute("insert into lobtypes (pk, col_clob, col_blob) values ('def', 'other text', null)");
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table lobtypes");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void exportDigestsAndSideFiles() {
+        try {
+            crud.setLobStore(new LobStore(new File(dir, "lobtypes.lobs")));
+            Snapshot snapshot = crud.fetch("lobtypes", "pk = 'abc'");
+            Snapshot.Record rec = snapshot.getRecords().get(0);
+            Assertions.assertTrue(LobStore.isDigest(rec.column("col_clob")));
+            Assertions.assertTrue(LobStore.isDigest(rec.column("col_blob")));
+            Assertions.assertEquals(2, new File(dir, "lobtypes.lobs").list().length);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void applyFromSideFiles() {
+        try {
+            crud.setLobStore(new LobStore(new File(dir, "lobtypes.lobs")));
+            File file = new File(dir, "lobtypes.snapshot");
+            crud.fetch("lobtypes").export(Files.newOutputStream(file.toPath()));
+            crud.setLobStore(null);
+            Snapshot inline = crud.fetch("lobtypes");
+
+            crud.execute("delete lobtypes where pk = 'abc'");
+            crud.execute("update lobtypes set col_clob = 'changed text' where pk = 'def'");
+
+            Snapshot reference = Snapshot.read(file);
+            ChangeSet change = crud.delta(reference, Collections.emptyList());
+            Assertions.assertEquals(1, change.insertRecs().size());
+            Assertions.assertEquals(1, change.updateRecs().size());
+            Assertions.assertTrue(change.hasLobDigests());
+            Assertions.assertThrows(IllegalStateException.class, change::sqlUndoStmt);
+            Assertions.assertTrue(crud.apply(change, false, false).isEmpty());
+
+            Assertions.assertTrue(crud.delta(reference, Collections.emptyList()).isEmpty());
+            Assertions.assertTrue(inline.delta(crud.fetch("lobtypes"), Collections.emptyList()).isEmpty());
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void streamsClosedPerThread() throws Exception {
+        crud.setLobStore(new LobStore(new File(dir, "lobtypes.lobs")));
+        Snapshot snapshot = crud.fetch("lobtypes", "pk = 'abc'");
+        String digest = snapshot.getRecords().get(0).column("col_blob");
+        LobStore lobs = snapshot.getLobStore();
+
+        InputStream mine = lobs.stream(digest);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                lobs.stream(digest);
+                lobs.closeStreams();
+                return null;
+            }).get();
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, mine.read());
+        lobs.closeStreams();
+        Assertions.assertThrows(IOException.class, mine::read);
+    }
+
+}
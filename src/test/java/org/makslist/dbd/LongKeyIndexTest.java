@@ -0,0 +1,116 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class LongKeyIndexTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table numkey (pk bigint, col_char varchar(30), primary key (pk))");
+            crud.execute("create table packedkey (pk_a integer, pk_b smallint, col_char varchar(30), primary key (pk_a, pk_b))");
+            crud.execute("create table textkey (pk varchar(10), col_char varchar(30), primary key (pk))");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table numkey");
+            crud.execute("drop table packedkey");
+            crud.execute("drop table textkey");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void chosenFromPrimaryKeyColumns() throws SQLException {
+        Assertions.assertTrue(KeyIndex.create(crud.tableMetaData("numkey")) instanceof LongKeyIndex);
+        Assertions.assertTrue(KeyIndex.create(crud.tableMetaData("packedkey")) instanceof LongKeyIndex);
+        Assertions.assertTrue(KeyIndex.create(crud.tableMetaData("textkey")) instanceof HashKeyIndex);
+    }
+
+    @Test
+    void packsAndOverflows() {
+        LongKeyIndex index = new LongKeyIndex(2);
+        for (int i = 0; i < 10_000; i++)
+            index.put(new Snapshot.Key(new String[]{String.valueOf(i - 5000), String.valueOf(i % 7)}), i);
+        index.put(new Snapshot.Key(new String[]{"007", "1"}), 10_000);
+        index.put(new Snapshot.Key(new String[]{"7", null}), 10_001);
+        index.put(new Snapshot.Key(new String[]{"99999999999", "1"}), 10_002);
+
+        Assertions.assertEquals(10_003, index.size());
+        Assertions.assertEquals(0, index.get(new Snapshot.Key(new String[]{"-5000", "0"})));
+        Assertions.assertEquals(9_999, index.get(new Snapshot.Key(new String[]{"4999", String.valueOf(9_999 % 7)})));
+        Assertions.assertEquals(10_000, index.get(new Snapshot.Key(new String[]{"007", "1"})));
+        Assertions.assertEquals(-1, index.get(new Snapshot.Key(new String[]{"7", "3"})));
+        Assertions.assertEquals(10_001, index.get(new Snapshot.Key(new String[]{"7", null})));
+        Assertions.assertEquals(10_002, index.get(new Snapshot.Key(new String[]{"99999999999", "1"})));
+        Assertions.assertEquals(-1, index.get(new Snapshot.Key(new String[]{"1", "-0"})));
+    }
+
+    @Test
+    void concurrentLookups() throws Exception {
+        Snapshot snapshot = new Snapshot(crud.tableMetaData("packedkey"), null);
+        for (int i = 0; i < 100_000; i++)
+            snapshot.addRecord(new String[]{String.valueOf(i / 7 - 5000), String.valueOf(i % 7), "value " + i});
+
+        AtomicInteger wrong = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        Snapshot.Record record = snapshot.getRecord(new Snapshot.Key(new String[]{String.valueOf(i / 7 - 5000), String.valueOf(i % 7)}));
+                        if (record == null || !("value " + i).equals(record.column("col_char")))
+                            wrong.incrementAndGet();
+                    }
+                }));
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(0, wrong.get());
+    }
+
+    @Test
+    void deltaOnNumericKeys() throws SQLException {
+        for (int i = 0; i < 2000; i++) {
+            crud.execute("insert into numkey (pk, col_char) values (" + (i * 1_000_000_007L) + ", 'value')");
+            crud.execute("insert into packedkey (pk_a, pk_b, col_char) values (" + (i - 1000) + ", " + (i % 5) + ", 'value')");
+        }
+        Snapshot numRef = crud.fetch("numkey");
+        Snapshot packedRef = crud.fetch("packedkey");
+
+        crud.execute("update numkey set col_char = 'changed' where pk = 7000000049");
+        crud.execute("delete numkey where pk = 0");
+        crud.execute("insert into numkey (pk, col_char) values (-1, 'new')");
+        crud.execute("update packedkey set col_char = 'changed' where pk_a = -3");
+        crud.execute("delete packedkey where pk_a = 3");
+
+        ChangeSet numChange = crud.delta(numRef, Collections.emptyList());
+        Assertions.assertEquals(1, numChange.insertRecs().size());
+        Assertions.assertEquals(1, numChange.updateRecs().size());
+        Assertions.assertEquals(1, numChange.deleteRecs().size());
+
+        ChangeSet packedChange = crud.delta(packedRef, Collections.emptyList());
+        Assertions.assertEquals(1, packedChange.insertRecs().size());
+        Assertions.assertEquals(1, packedChange.updateRecs().size());
+        Assertions.assertEquals(0, packedChange.deleteRecs().size());
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.makslist.dbd;
+
+import com.fasterxml.jackson.databind.*;
+import org.junit.jupiter.api.*;
+
+import javax.management.*;
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class MetricsTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table metered (pk integer, col_char varchar(30), primary key (pk))");
+            crud.execute("insert into metered (pk, col_char) values (1, 'test123')");
+            crud.execute("insert into metered (pk, col_char) values (2, 'test456')");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table metered");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void countsRowsAndRegistersMXBean() throws Exception {
+        Metrics.Table metrics = Metrics.getInstance().table("metered");
+        long rows = metrics.getRows();
+        long bytes = metrics.getBytes();
+
+        Snapshot reference = crud.fetch("metered");
+        crud.execute("delete metered where pk = 2");
+        crud.apply(crud.delta(reference, Collections.emptyList()), false, false);
+
+        Assertions.assertEquals(rows + 3, metrics.getRows());
+        Assertions.assertEquals(bytes + 3 * 8, metrics.getBytes());
+        Assertions.assertTrue(metrics.getRoundTrips() >= 3);
+
+        ObjectName name = new ObjectName(Metrics.DOMAIN + ":type=Table,name=" + ObjectName.quote("metered"));
+        Assertions.assertEquals(metrics.getRows(), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Rows"));
+    }
+
+    @Test
+    void countsEncodedBytesAndBatches() throws SQLException {
+        crud.execute("update metered set col_char = 'täst€' where pk = 1");
+        Metrics.Table metrics = Metrics.getInstance().table("metered");
+        long bytes = metrics.getBytes();
+        Snapshot reference = crud.fetch("metered");
+        Assertions.assertEquals(bytes + 1 + 8 + 1 + 7, metrics.getBytes());
+
+        crud.execute("update metered set col_char = 'changed'");
+        ChangeSet change = crud.delta(reference, Collections.emptyList());
+        long roundTrips = metrics.getRoundTrips();
+        crud.apply(change, false, false);
+        Assertions.assertEquals(roundTrips + 1, metrics.getRoundTrips());
+    }
+
+    @Test
+    void writesJsonReport() throws IOException, SQLException {
+        crud.fetch("metered");
+        File report = Files.createTempFile("report", ".json").toFile();
+        Metrics.getInstance().report(report);
+
+        JsonNode json = new ObjectMapper().readTree(report);
+        Assertions.assertTrue(json.has("elapsedMillis"));
+        JsonNode table = null;
+        for (JsonNode node : json.get("tables"))
+            if ("metered".equals(node.get("name").asText()))
+                table = node;
+        Assertions.assertNotNull(table);
+        Assertions.assertTrue(table.get("rows").asLong() >= 2);
+        Assertions.assertTrue(table.get("phaseMillis").has("query"));
+        Assertions.assertTrue(table.get("phaseMillis").has("delete"));
+    }
+
+}
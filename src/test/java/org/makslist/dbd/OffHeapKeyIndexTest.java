@@ -0,0 +1,114 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class OffHeapKeyIndexTest {
+
+    @Test
+    void putGetAcrossResizes() {
+        OffHeapKeyIndex index = new OffHeapKeyIndex();
+        for (int i = 0; i < 100_000; i++)
+            index.put(new Snapshot.Key(new String[]{"k" + i, i % 3 == 0 ? null : "ä" + i}), i);
+
+        Assertions.assertEquals(100_000, index.size());
+        for (int i = 0; i < 100_000; i += 7)
+            Assertions.assertEquals(i, index.get(new Snapshot.Key(new String[]{"k" + i, i % 3 == 0 ? null : "ä" + i})));
+        Assertions.assertEquals(-1, index.get(new Snapshot.Key(new String[]{"k1", null})));
+        Assertions.assertEquals(-1, index.get(new Snapshot.Key(new String[]{"k0", ""})));
+    }
+
+    @Test
+    void putReplacesPosition() {
+        OffHeapKeyIndex index = new OffHeapKeyIndex();
+        index.put(new Snapshot.Key(new String[]{"a"}), 0);
+        index.put(new Snapshot.Key(new String[]{"b"}), 1);
+        index.put(new Snapshot.Key(new String[]{"a"}), 2);
+
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertEquals(2, index.get(new Snapshot.Key(new String[]{"a"})));
+        Assertions.assertEquals(1, index.get(new Snapshot.Key(new String[]{"b"})));
+
+        index.clear();
+        Assertions.assertEquals(-1, index.get(new Snapshot.Key(new String[]{"a"})));
+        Assertions.assertEquals(-1, index.get((Snapshot.Key) null));
+    }
+
+    @Test
+    void concurrentLookups() throws Exception {
+        OffHeapKeyIndex index = new OffHeapKeyIndex();
+        for (int i = 0; i < 100_000; i++)
+            index.put(new Snapshot.Key(new String[]{"k" + i, "ä" + (i % 13)}), i);
+
+        AtomicInteger wrong = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++)
+                        if (index.get(new Snapshot.Key(new String[]{"k" + i, "ä" + (i % 13)})) != i)
+                            wrong.incrementAndGet();
+                }));
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(0, wrong.get());
+    }
+
+    @Test
+    void deltaWithOffHeapIndex() throws SQLException {
+        Crud crud = Crud.connectH2(false);
+        Snapshot.useOffHeapIndex(true);
+        try {
+            crud.execute("create table offheap (pk_char varchar(3), pk_int integer, col_char varchar(30), primary key (pk_char, pk_int))");
+            for (int i = 0; i < 3000; i++)
+                crud.execute("insert into offheap (pk_char, pk_int, col_char) values ('k" + (i % 10) + "', " + i + ", 'value')");
+            Snapshot reference = crud.fetch("offheap");
+
+            crud.execute("update offheap set col_char = 'changed' where pk_int = 17");
+            crud.execute("delete offheap where pk_int = 18");
+            crud.execute("insert into offheap (pk_char, pk_int, col_char) values ('new', 1, 'value')");
+
+            ChangeSet change = crud.delta(reference, Collections.emptyList());
+            Assertions.assertEquals(1, change.insertRecs().size());
+            Assertions.assertEquals(1, change.updateRecs().size());
+            Assertions.assertEquals(1, change.deleteRecs().size());
+        } finally {
+            Snapshot.useOffHeapIndex(false);
+            crud.execute("drop table offheap");
+            crud.close();
+        }
+    }
+
+    @Test
+    void deltaWithoutPrimaryKey() throws SQLException {
+        Crud crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table offheap_nopk (col_int integer, col_char varchar(30))");
+            for (int i = 0; i < 100; i++)
+                crud.execute("insert into offheap_nopk (col_int, col_char) values (" + i + ", 'value')");
+            Snapshot reference = crud.fetch("offheap_nopk");
+            crud.execute("update offheap_nopk set col_char = 'changed' where col_int = 17");
+            crud.execute("delete offheap_nopk where col_int = 18");
+
+            ChangeSet onHeap = crud.delta(reference, Collections.emptyList());
+            Snapshot.useOffHeapIndex(true);
+            ChangeSet offHeap = crud.delta(reference, Collections.emptyList());
+            Assertions.assertEquals(onHeap.insertRecs().size(), offHeap.insertRecs().size());
+            Assertions.assertEquals(onHeap.updateRecs().size(), offHeap.updateRecs().size());
+            Assertions.assertEquals(onHeap.deleteRecs().size(), offHeap.deleteRecs().size());
+        } finally {
+            Snapshot.useOffHeapIndex(false);
+            crud.execute("drop table offheap_nopk");
+            crud.close();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class OutPutTest {
+
+    OutPut output = OutPut.getInstance();
+
+    @Test
+    void messagesReachLogFileInOrder() throws IOException {
+        File log = Files.createTempFile("dbd", ".log").toFile();
+        try {
+            output.setFile(log);
+            for (int i = 0; i < 1000; i++)
+                output.userln("line " + i);
+            output.error("failed");
+            output.flush();
+
+            List<String> lines = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+            Assertions.assertEquals(1001, lines.size());
+            Assertions.assertTrue(lines.get(0).endsWith(" USER line 0"));
+            Assertions.assertTrue(lines.get(999).endsWith(" USER line 999"));
+            Assertions.assertTrue(lines.get(1000).endsWith(" ERROR failed"));
+        } finally {
+            output.setFile(null);
+        }
+    }
+
+    @Test
+    void messagesAreNotBuiltBelowLevel() {
+        Assumptions.assumeFalse(output.isDebug());
+        output.debug(() -> {
+            throw new AssertionError("debug message built although debug is off");
+        });
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+
+public class ParallelApplyTest {
+
+    CrudPool pool;
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        pool = CrudPool.open(3, () -> Crud.connectH2(false));
+        crud = pool.primary();
+        try {
+            crud.execute("create table parallel (id integer primary key, val integer, col_char varchar(30))");
+            for (int i = 0; i < 300; i++)
+                crud.execute("insert into parallel (id, val, col_char) values (" + i + ", " + i + ", 'value " + i + "')");
+            crud.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table parallel");
+            pool.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void splitsByKeyIntoDisjointParts() throws SQLException {
+        Snapshot reference = crud.fetch("parallel");
+        crud.execute("delete parallel where id < 30");
+        crud.execute("update parallel set col_char = 'changed' where id >= 250");
+        crud.execute("insert into parallel (id, val, col_char) values (1000, 1, 'new')");
+
+        ChangeSet change = crud.delta(reference, Collections.emptyList());
+        List<ChangeSet> parts = change.split(3);
+        Assertions.assertEquals(30, parts.stream().mapToInt(p -> p.insertRecs().size()).sum());
+        Assertions.assertEquals(50, parts.stream().mapToInt(p -> p.updateRecs().size()).sum());
+        Assertions.assertEquals(1, parts.stream().mapToInt(p -> p.deleteRecs().size()).sum());
+        Assertions.assertTrue(parts.stream().allMatch(p -> !p.insertRecs().isEmpty()));
+    }
+
+    @Test
+    void appliesOnAllConnectionsAndCommits() throws SQLException, InterruptedException {
+        Snapshot reference = crud.fetch("parallel");
+        crud.execute("delete parallel where id < 30");
+        crud.execute("update parallel set col_char = 'changed' where id >= 250");
+        crud.execute("insert into parallel (id, val, col_char) values (1000, 1, 'new')");
+        crud.commit();
+
+        List<String> undo = pool.apply(crud.delta(reference, Collections.emptyList()), true, false);
+        Assertions.assertEquals(81, undo.size());
+        Assertions.assertTrue(crud.delta(reference, Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void rollsBackAllPartsOnFailure() throws SQLException {
+        Snapshot reference = crud.fetch("parallel");
+        crud.execute("delete parallel where id < 30");
+        crud.execute("alter table parallel add constraint val_limit check (val <> 17)");
+        crud.commit();
+
+        Assertions.assertThrows(RuntimeException.class, () -> pool.apply(crud.delta(reference, Collections.emptyList()), true, false));
+        Assertions.assertEquals(270, crud.fetch("parallel").getRecords().size());
+        crud.execute("alter table parallel drop constraint val_limit");
+    }
+
+    @Test
+    void appliesOnOneConnectionInAutocommit() throws SQLException, InterruptedException {
+        Snapshot reference = crud.fetch("parallel");
+        crud.execute("delete parallel where id < 30");
+        crud.execute("alter table parallel add constraint val_limit check (val <> 17)");
+        crud.commit();
+
+        try (CrudPool mixed = CrudPool.open(3, () -> Crud.connectH2(true))) {
+            mixed.primary().execute("set autocommit false");
+            Assertions.assertThrows(RuntimeException.class, () -> mixed.apply(crud.delta(reference, Collections.emptyList()), true, false));
+        }
+        Assertions.assertEquals(270, crud.fetch("parallel").getRecords().size());
+        crud.execute("alter table parallel drop constraint val_limit");
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+
+public class PipelineExportTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table pipetypes (pk integer, col_char varchar(30), col_num numeric(10,2), col_date date, primary key (pk))");
+            for (int i = 0; i < 2500; i++)
+                crud.execute("insert into pipetypes (pk, col_char, col_num, col_date) values (" + i + ", 'row" + i + "', " + i + ".25, date '2020-01-01')");
+            crud.execute("insert into pipetypes (pk, col_char, col_num, col_date) values (2500, null, null, null)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table pipetypes");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void pipelinedExportEqualsFetch() {
+        try {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            crud.fetch("pipetypes").export(expected);
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            long rows = crud.export("pipetypes", null, actual, 3);
+
+            Assertions.assertEquals(2501, rows);
+            Assertions.assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void failedExportLeavesSnapshotUnfinished() throws IOException {
+        File file = Files.createTempFile("pipetypes", ".snapshot").toFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                Assertions.assertThrows(SQLException.class, () -> crud.export("pipetypes", "1 / (pk - 2000) <> 0", out, 3));
+            }
+            Assertions.assertThrows(IOException.class, () -> Snapshot.read(file));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class SnapshotBundleTest {
+
+    Crud crud;
+    File path;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table bundle_a (id integer primary key, col_char varchar(30), col_ts timestamp)");
+            crud.execute("create table bundle_b (id integer primary key, col_num numeric(10,2))");
+            for (int i = 0; i < 500; i++) {
+                crud.execute("insert into bundle_a values (" + i + ", " + (i % 10 == 0 ? "null" : "'value " + i + "'") + ", timestamp '2024-01-01 10:00:00.5')");
+                if (i % 2 == 0)
+                    crud.execute("insert into bundle_b values (" + i + ", " + i + ".25)");
+            }
+            path = Files.createTempDirectory("bundle").toFile();
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table bundle_a");
+            crud.execute("drop table bundle_b");
+            crud.close();
+            for (File file : Objects.requireNonNull(path.listFiles()))
+                Files.delete(file.toPath());
+            Files.delete(path.toPath());
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void writesAndReadsTables() throws IOException, SQLException {
+        File file = new File(path, "all." + SnapshotBundle.EXTENSION);
+        try (SnapshotBundle.Writer writer = new SnapshotBundle.Writer(file)) {
+            writer.write(crud.fetch("bundle_b", "id < 100"));
+            Snapshot header = new Snapshot(crud.tableMetaData("bundle_a"), null);
+            try (SnapshotBundle.Block block = writer.block(header)) {
+                crud.scan(header.getTable(), null, null, block::write);
+            }
+            writer.finish();
+        }
+
+        SnapshotBundle bundle = SnapshotBundle.open(file);
+        Assertions.assertEquals(2, bundle.getTables().size());
+        Assertions.assertEquals("bundle_a", bundle.getTables().get(0).getTable().name.toLowerCase());
+        Assertions.assertEquals(500, bundle.entry("bundle_a").getRows());
+        Assertions.assertEquals(50, bundle.entry("bundle_b").getRows());
+
+        List<Snapshot> snapshots = bundle.readAll(2);
+        Assertions.assertEquals(500, snapshots.get(0).getRecords().size());
+        Assertions.assertEquals("id < 100", snapshots.get(1).getWhere());
+        for (Snapshot snapshot : snapshots)
+            Assertions.assertTrue(crud.delta(snapshot, Collections.emptyList()).isEmpty());
+
+        Snapshot b = bundle.read(bundle.entry("bundle_b"));
+        Assertions.assertEquals("2.25", b.getRecords().get(1).column("col_num"));
+    }
+
+    @Test
+    void discardedBlockIsLeftOut() throws IOException, SQLException {
+        File file = new File(path, "partial." + SnapshotBundle.EXTENSION);
+        try (SnapshotBundle.Writer writer = new SnapshotBundle.Writer(file)) {
+            writer.write(crud.fetch("bundle_b"));
+            SnapshotBundle.Block block = writer.block(crud.fetch("bundle_a", "id < 10"));
+            block.write(new String[]{"1", "x", null});
+            block.discard();
+            block.close();
+            writer.finish();
+        }
+
+        SnapshotBundle bundle = SnapshotBundle.open(file);
+        Assertions.assertEquals(1, bundle.getTables().size());
+        Assertions.assertNull(bundle.entry("bundle_a"));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File file = new File(path, "other." + SnapshotBundle.EXTENSION);
+        Files.write(file.toPath(), "{\"table\": {}}".getBytes());
+        Assertions.assertThrows(IOException.class, () -> SnapshotBundle.open(file));
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class SnapshotHistoryTest {
+
+    Crud crud;
+    File path;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table versioned (id integer primary key, col_char varchar(30))");
+            for (int i = 0; i < 100; i++)
+                crud.execute("insert into versioned values (" + i + ", 'value " + i + "')");
+            path = Files.createTempDirectory("history").toFile();
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table versioned");
+            crud.close();
+            for (File file : Objects.requireNonNull(path.listFiles()))
+                Files.delete(file.toPath());
+            Files.delete(path.toPath());
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void reconstructsEveryVersion() throws IOException, SQLException {
+        SnapshotHistory history = SnapshotHistory.open(path);
+        Snapshot first = crud.fetch("versioned");
+        Assertions.assertTrue(history.append("20240101_0000", first, 3).isBase());
+
+        crud.execute("delete versioned where id = 1");
+        crud.execute("update versioned set col_char = null where id = 2");
+        crud.execute("insert into versioned values (100, 'new')");
+        SnapshotHistory.Version delta = history.append("20240102_0000", crud.fetch("versioned"), 3);
+        Assertions.assertFalse(delta.isBase());
+        Assertions.assertEquals(2, delta.getUpserts());
+        Assertions.assertEquals(1, delta.getDeletes());
+
+        crud.execute("update versioned set col_char = 'again' where id = 3");
+        Assertions.assertFalse(history.append("20240103_0000", crud.fetch("versioned"), 3).isBase());
+        Assertions.assertTrue(history.append("20240104_0000", crud.fetch("versioned"), 3).isBase());
+
+        SnapshotHistory reopened = SnapshotHistory.open(path);
+        Assertions.assertEquals(4, reopened.getVersions().size());
+        Assertions.assertTrue(first.delta(reopened.read("20240101_0000"), Collections.emptyList()).isEmpty());
+        Snapshot second = reopened.read("20240102_0000");
+        Assertions.assertEquals(100, second.getRecords().size());
+        Assertions.assertNull(second.getRecord(new Snapshot.Key(new String[]{"1"})));
+        Assertions.assertNull(second.getRecord(new Snapshot.Key(new String[]{"2"})).column("col_char"));
+        Assertions.assertEquals("value 3", second.getRecord(new Snapshot.Key(new String[]{"3"})).column("col_char"));
+        Assertions.assertTrue(crud.delta(reopened.read("20240103_0000"), Collections.emptyList()).isEmpty());
+        Assertions.assertTrue(crud.delta(reopened.read(null), Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void rebasesOnLargeChanges() throws IOException, SQLException {
+        SnapshotHistory history = SnapshotHistory.open(path);
+        history.append("20240101_0000", crud.fetch("versioned"), SnapshotHistory.REBASE_EVERY);
+        crud.execute("update versioned set col_char = 'changed' where id < 60");
+        Assertions.assertTrue(history.append("20240102_0000", crud.fetch("versioned"), SnapshotHistory.REBASE_EVERY).isBase());
+        Assertions.assertThrows(IOException.class, () -> history.append("20240102_0000", crud.fetch("versioned"), SnapshotHistory.REBASE_EVERY));
+        Assertions.assertThrows(IOException.class, () -> history.read("20240103_0000"));
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class SpillDeltaTest {
+
+    Crud crud;
+    File file;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table spilled (pk_char varchar(3), pk_int integer, col_num numeric(10,2), col_char varchar(30), primary key (pk_char, pk_int))");
+            for (int i = 0; i < 2000; i++)
+                crud.execute("insert into spilled (pk_char, pk_int, col_num, col_char) values ('k" + (i % 4) + "', " + i + ", " + i + ".5, " + (i % 9 == 0 ? "null" : "'value " + i + "'") + ")");
+            file = Files.createTempFile("spilled", ".snapshot").toFile();
+            crud.fetch("spilled").export(Files.newOutputStream(file.toPath()));
+
+            crud.execute("update spilled set col_char = 'changed' where pk_int in (3, 300, 1999)");
+            crud.execute("update spilled set col_num = 1 where pk_int = 20");
+            crud.execute("delete spilled where pk_int in (5, 6)");
+            crud.execute("insert into spilled (pk_char, pk_int, col_num, col_char) values ('new', 1, null, 'value')");
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table spilled");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void partitionedDeltaMatchesInMemoryDelta() throws IOException, SQLException {
+        ChangeSet expected = crud.delta(Snapshot.read(file), Collections.emptyList());
+
+        try (SpillDelta delta = new SpillDelta(file, 4)) {
+            delta.partition(crud);
+            delta.forEach(Collections.emptyList(), change -> {
+            });
+            Assertions.assertEquals(2000, delta.getReferenceRows());
+            Assertions.assertEquals(1999, delta.getCurrentRows());
+            Assertions.assertEquals(expected.insertRecs().size(), delta.getInserts());
+            Assertions.assertEquals(expected.updateRecs().size(), delta.getUpdates());
+            Assertions.assertEquals(expected.deleteRecs().size(), delta.getDeletes());
+        }
+    }
+
+    @Test
+    void applyPartitions() throws IOException, SQLException {
+        try (SpillDelta delta = new SpillDelta(file, 3)) {
+            delta.partition(crud);
+            delta.forEach(Collections.emptyList(), change -> crud.apply(change, false, false));
+            Assertions.assertEquals(2, delta.getInserts());
+            Assertions.assertEquals(4, delta.getUpdates());
+            Assertions.assertEquals(1, delta.getDeletes());
+        }
+        Assertions.assertTrue(crud.delta(Snapshot.read(file), Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void partitionsFromBudget() throws IOException {
+        Assertions.assertEquals(1, SpillDelta.partitions(file, -1));
+        Assertions.assertEquals(1, SpillDelta.partitions(file, file.length() * 10));
+        Assertions.assertTrue(SpillDelta.partitions(file, file.length()) > 1);
+        Assertions.assertEquals(256, SpillDelta.partitions(file, 1));
+    }
+
+    @Test
+    void withoutPrimaryKey() throws IOException, SQLException {
+        crud.execute("create table spilled_nopk (col_int integer, col_char varchar(30))");
+        try {
+            for (int i = 0; i < 200; i++)
+                crud.execute("insert into spilled_nopk (col_int, col_char) values (" + i + ", 'value " + i + "')");
+            File nopk = Files.createTempFile("spilled_nopk", ".snapshot").toFile();
+            crud.fetch("spilled_nopk").export(Files.newOutputStream(nopk.toPath()));
+            crud.execute("update spilled_nopk set col_char = 'changed' where col_int = 7");
+            Assertions.assertEquals(1, SpillDelta.partitions(nopk, nopk.length()));
+
+            ChangeSet expected = crud.delta(Snapshot.read(nopk), Collections.emptyList());
+            try (SpillDelta delta = new SpillDelta(nopk, 3)) {
+                delta.partition(crud);
+                delta.forEach(Collections.emptyList(), change -> {
+                });
+                Assertions.assertEquals(expected.insertRecs().size(), delta.getInserts());
+                Assertions.assertEquals(expected.updateRecs().size(), delta.getUpdates());
+                Assertions.assertEquals(expected.deleteRecs().size(), delta.getDeletes());
+            }
+            Files.delete(nopk.toPath());
+        } finally {
+            crud.execute("drop table spilled_nopk");
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.makslist.dbd;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class StringDictionaryTest {
+
+    Crud crud;
+
+    @BeforeEach
+    void setUp() {
+        crud = Crud.connectH2(false);
+        try {
+            crud.execute("create table coded (pk integer, col_status varchar(10), col_text varchar(30), primary key (pk))");
+            for (int i = 0; i < 1000; i++)
+                crud.execute("insert into coded (pk, col_status, col_text) values (" + i + ", '" + (i % 2 == 0 ? "OPEN" : "CLOSED") + "', 'text" + i + "')");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            crud.execute("drop table coded");
+            crud.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void repeatedValuesShareOneInstance() throws SQLException, IOException {
+        Snapshot fetched = crud.fetch("coded");
+        assertShared(fetched);
+
+        File file = Files.createTempFile("coded", ".snapshot").toFile();
+        fetched.export(Files.newOutputStream(file.toPath()));
+        assertShared(Snapshot.read(file));
+    }
+
+    private static void assertShared(Snapshot snapshot) {
+        List<Snapshot.Record> records = snapshot.getRecords();
+        Assertions.assertSame(records.get(0).column("col_status"), records.get(2).column("col_status"));
+        Assertions.assertSame(records.get(1).column("col_status"), records.get(999).column("col_status"));
+        Assertions.assertEquals("CLOSED", records.get(999).column("col_status"));
+    }
+
+    @Test
+    void givesUpOnHighCardinality() {
+        StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < 2 * (StringDictionary.MAX_DISTINCT + 1); i++)
+            Assertions.assertEquals("v" + i / 2, dictionary.dedup("v" + i / 2));
+        Assertions.assertFalse(dictionary.isActive());
+        String value = new String("v1");
+        Assertions.assertSame(value, dictionary.dedup(value));
+    }
+
+    @Test
+    void givesUpOnFewRepeats() {
+        StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < StringDictionary.SAMPLE; i++)
+            dictionary.dedup(i % 3 == 0 ? "same" : "v" + i);
+        Assertions.assertFalse(dictionary.isActive());
+    }
+
+}